@@ -8,9 +8,9 @@ import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 
 /**
  * Custom ArrayAdapter for SpotifyArtist objects
@@ -20,18 +20,31 @@ public class ArtistAdapter extends ArrayAdapter<SpotifyArtist> {
 
     private ArrayList<SpotifyArtist> artists;
 
+    // tag of the image requests, so that the fragment can pause and cancel them
+    private final Object imageTag;
+
+    // IDs of the artists in the list, used to drop duplicates when appending pages
+    private HashSet<String> artistIds = new HashSet<String>();
+
     /**
      * Custom constructor
      *
      * @param context   The current context.
      * @param artists   A List of Artist objects to display in a list.
+     * @param imageTag  Tag for the list's image requests.
      */
-    public ArtistAdapter(Activity context, ArrayList<SpotifyArtist> artists) {
+    public ArtistAdapter(Activity context, ArrayList<SpotifyArtist> artists, Object imageTag) {
         // The second argument is not going to be used in this adapter,
         // so any value is acceptable.
         super(context, 0, artists);
 
+        this.imageTag = imageTag;
+
         this.artists = artists;
+
+        for (SpotifyArtist artist : artists) {
+            artistIds.add(artist.id);
+        }
     }
 
     /**
@@ -43,7 +56,63 @@ public class ArtistAdapter extends ArrayAdapter<SpotifyArtist> {
     }
 
     /**
-     * Provides a view for the AdapterView
+     * Replace the whole list, redrawing it once
+     * @param artists SpotifyArtist objects to show
+     */
+    public void replaceAll(Collection<? extends SpotifyArtist> artists) {
+        setNotifyOnChange(false);
+        clear();
+        addAll(artists);
+
+        // also turns notifyOnChange back on
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Append the artists that aren't already in the list, redrawing it once
+     * @param artists SpotifyArtist objects to add
+     * @return number of artists added
+     */
+    public int appendAll(Collection<? extends SpotifyArtist> artists) {
+        ArrayList<SpotifyArtist> added = new ArrayList<SpotifyArtist>(artists.size());
+
+        for (SpotifyArtist artist : artists) {
+            if (artistIds.add(artist.id)) {
+                added.add(artist);
+            }
+        }
+
+        if (!added.isEmpty()) {
+            addAll(added);
+        }
+
+        return added.size();
+    }
+
+    @Override
+    public void add(SpotifyArtist artist) {
+        artistIds.add(artist.id);
+        super.add(artist);
+    }
+
+    @Override
+    public void addAll(Collection<? extends SpotifyArtist> collection) {
+        for (SpotifyArtist artist : collection) {
+            artistIds.add(artist.id);
+        }
+        super.addAll(collection);
+    }
+
+    @Override
+    public void clear() {
+        artistIds.clear();
+        super.clear();
+    }
+
+    /**
+     * Provides a view for the AdapterView. Rows keep their child views in a ViewHolder, and a
+     * row that is already showing the artist (e.g. after notifyDataSetChanged()) isn't bound
+     * again, so its photo doesn't flash back to the placeholder.
      *
      * @param position      The position that is requesting a view.
      * @param convertView   The recycled view to populate.
@@ -53,24 +122,55 @@ public class ArtistAdapter extends ArrayAdapter<SpotifyArtist> {
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         SpotifyArtist artist = getItem(position);
+        ViewHolder holder;
 
         if (convertView == null) {
             convertView = LayoutInflater.from(getContext()).inflate(R.layout.list_item_artist, parent, false);
+            holder = new ViewHolder(convertView);
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
         }
 
-        ImageView artistPhotoView = (ImageView) convertView.findViewById(R.id.artist_photo);
-        artistPhotoView.setImageResource(R.mipmap.artist_placeholder);
-
-        // check to see if there is an image and load it with Picasso
-        if (artist.photo!=null) {
-            Picasso.with(getContext()).load(artist.photo).into(artistPhotoView);
+        if (holder.artist == artist) {
+            return convertView;
         }
+        holder.artist = artist;
+
+        PerfStats.beginSection("bind artist row");
+
+        holder.nameView.setText(artist.name);
 
+        // load the image, if there is one; otherwise a recycled row may still be loading the
+        // previous artist's image, which has to be cancelled
+        String photoUrl = artist.getPhotoUrl();
+
+        if (photoUrl == null) {
+            ImageLoader.getInstance(getContext()).cancelRequest(holder.photoView);
+            holder.photoView.setImageResource(R.mipmap.artist_placeholder);
+        } else {
+            ImageLoader.getInstance(getContext()).loadThumbnail(photoUrl)
+                    .placeholder(R.mipmap.artist_placeholder)
+                    .tag(imageTag)
+                    .into(holder.photoView);
+        }
 
-        TextView artistNameView = (TextView) convertView.findViewById(R.id.artist_name);
-        artistNameView.setText(artist.name);
+        PerfStats.endSection();
 
         return convertView;
     }
 
+    /**
+     * Child views of a row, and the artist the row is showing
+     */
+    private static class ViewHolder {
+        final ImageView photoView;
+        final TextView nameView;
+        SpotifyArtist artist;
+
+        ViewHolder(View row) {
+            photoView = (ImageView) row.findViewById(R.id.artist_photo);
+            nameView = (TextView) row.findViewById(R.id.artist_name);
+        }
+    }
 }
@@ -0,0 +1,222 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Fills in SpotifyArtist details for lists that only hold artist IDs, e.g. a list restored
+ * after the process was killed whose artists have since been pruned from the SpotifyStore.
+ * <p>
+ * Artists in the MemoryCache are answered from it. The other IDs asked for within a short
+ * window are collected, from every caller, and looked up through the API's multiple artists
+ * endpoint, up to 50 per request, so that N artists take about N/50 round trips instead of N.
+ * The artists found are put in the MemoryCache for everyone else. Runs on the main thread.
+ */
+public class ArtistHydrator implements RequestScheduler.Listener {
+
+    private static final String LOG_TAG = ArtistHydrator.class.getSimpleName();
+
+    // how long to wait for more IDs before sending the requests
+    private static final long BATCH_WINDOW_MILLIS = 50;
+
+    private static ArtistHydrator instance;
+
+    private final Context context;
+    private final RequestScheduler scheduler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // IDs waiting for the batching window to close, and IDs in requests that are running
+    private final LinkedHashSet<String> pending = new LinkedHashSet<String>();
+    private final HashSet<String> inFlight = new HashSet<String>();
+
+    // callers still waiting for some of their artists
+    private final ArrayList<Hydration> hydrations = new ArrayList<Hydration>();
+
+    private int requestCount;
+    private int hydratedCount;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            sendPending();
+        }
+    };
+
+    /**
+     * Returns the shared hydrator, creating it on first use
+     * @param context any Context
+     * @return the shared ArtistHydrator
+     */
+    public static synchronized ArtistHydrator getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArtistHydrator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ArtistHydrator(Context context) {
+        this.context = context;
+        this.scheduler = RequestScheduler.getInstance(context);
+    }
+
+    /**
+     * Look up the details of a list of artists
+     * @param ids Spotify artist IDs
+     * @param callback receives the artists, in the order of the IDs, on the main thread;
+     *                 artists that couldn't be found are left out
+     */
+    public void hydrate(List<String> ids, SpotifyStore.Callback<ArrayList<SpotifyArtist>> callback) {
+        final Hydration hydration = new Hydration(ids, callback);
+        MemoryCache memoryCache = MemoryCache.getInstance(context);
+
+        for (String id : hydration.ids) {
+            ResultCache.Entry<SpotifyArtist> cached = memoryCache.getArtist(id);
+
+            if (cached != null) {
+                hydration.found.put(id, cached.value);
+            } else if (hydration.missing.add(id) && !inFlight.contains(id)) {
+                pending.add(id);
+            }
+        }
+
+        if (hydration.missing.isEmpty()) {
+            // answer asynchronously all the same
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    hydration.deliver();
+                }
+            });
+            return;
+        }
+
+        hydrations.add(hydration);
+
+        mainHandler.removeCallbacks(flush);
+        if (pending.size() >= FetchArtistsByIdTask.MAX_IDS) {
+            sendPending();
+        } else if (!pending.isEmpty()) {
+            mainHandler.postDelayed(flush, BATCH_WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * Number of multiple artists requests sent this session
+     * @return request count
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Number of artists looked up through the API this session
+     * @return artist count
+     */
+    public int getHydratedCount() {
+        return hydratedCount;
+    }
+
+    /**
+     * Send the pending IDs, in requests of up to 50
+     */
+    private void sendPending() {
+        mainHandler.removeCallbacks(flush);
+
+        int photoPx = ImageTargets.forDisplay(context).thumbnailPx;
+        ArrayList<String> batch = new ArrayList<String>(FetchArtistsByIdTask.MAX_IDS);
+        Iterator<String> iterator = pending.iterator();
+
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+
+            if (batch.size() == FetchArtistsByIdTask.MAX_IDS || !iterator.hasNext()) {
+                FetchArtistsByIdTask task = new FetchArtistsByIdTask(batch, photoPx);
+                inFlight.addAll(batch);
+                requestCount++;
+                scheduler.submit(task, task.getPriority(), this);
+                batch.clear();
+            }
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Cache the artists found and answer the callers that now have all of theirs
+     * @param request the finished FetchArtistsByIdTask
+     */
+    @Override
+    public void onRequestFinished(SpotifyRequest<?> request) {
+        FetchArtistsByIdTask task = (FetchArtistsByIdTask) request;
+        ArrayList<SpotifyArtist> artists = task.getResult();
+        HashMap<String, SpotifyArtist> found = new HashMap<String, SpotifyArtist>();
+
+        inFlight.removeAll(task.ids);
+
+        if (artists != null) {
+            MemoryCache memoryCache = MemoryCache.getInstance(context);
+
+            for (SpotifyArtist artist : artists) {
+                found.put(artist.id, artist);
+                memoryCache.putArtist(artist);
+            }
+            hydratedCount += artists.size();
+        }
+
+        Log.d(LOG_TAG, "Looked up " + found.size() + " of " + task.ids.size() + " artists; "
+                + hydratedCount + " artists in " + requestCount + " requests so far");
+
+        // IDs that failed or weren't found are given up on rather than retried
+        for (int i = hydrations.size() - 1; i >= 0; i--) {
+            Hydration hydration = hydrations.get(i);
+
+            for (String id : task.ids) {
+                if (hydration.missing.remove(id) && found.containsKey(id)) {
+                    hydration.found.put(id, found.get(id));
+                }
+            }
+
+            if (hydration.missing.isEmpty()) {
+                hydrations.remove(i);
+                hydration.deliver();
+            }
+        }
+    }
+
+    /**
+     * One caller's list of IDs and the artists found for it so far
+     */
+    private static class Hydration {
+        final ArrayList<String> ids;
+        final SpotifyStore.Callback<ArrayList<SpotifyArtist>> callback;
+        final HashMap<String, SpotifyArtist> found = new HashMap<String, SpotifyArtist>();
+        final HashSet<String> missing = new HashSet<String>();
+
+        Hydration(List<String> ids, SpotifyStore.Callback<ArrayList<SpotifyArtist>> callback) {
+            this.ids = new ArrayList<String>(ids);
+            this.callback = callback;
+        }
+
+        void deliver() {
+            ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>(ids.size());
+
+            for (String id : ids) {
+                SpotifyArtist artist = found.get(id);
+                if (artist != null) {
+                    artists.add(artist);
+                }
+            }
+
+            callback.onLoaded(artists);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local artist suggestions, backed by an ArtistIndex that is filled from search results and
+ * saved to a file so that it survives between launches.
+ * <p>
+ * Every change to the index is made on a single background thread, and the saved index is
+ * loaded there before anything else, so results from a search that finishes first are merged
+ * into it rather than written over it. Changes are published to the index in one go and
+ * saved a few seconds after the first unsaved one, so a burst of searches costs one write.
+ * suggest() only reads the published index, so it never waits on the UI thread.
+ */
+public class ArtistSuggestions {
+
+    private static final String LOG_TAG = ArtistSuggestions.class.getSimpleName();
+
+    private static final String INDEX_FILE = "artist_index.bin";
+
+    // memory cap for the index; at a few hundred bytes per artist this stays well under 1 MB
+    private static final int MAX_ARTISTS = 2000;
+
+    // how long after a change the index is saved, so that a burst of changes is written once
+    private static final long SAVE_DELAY_SECONDS = 5;
+
+    private static ArtistSuggestions instance;
+
+    private final ArtistIndex index = new ArtistIndex(MAX_ARTISTS);
+    private final File file;
+    private final ScheduledExecutorService executor;
+
+    // true while a save is scheduled; only touched on the executor's thread
+    private boolean savePending = false;
+
+    /**
+     * Returns the shared suggestions, loading the saved index in the background on first use
+     * @param context any Context
+     * @return the shared ArtistSuggestions
+     */
+    public static synchronized ArtistSuggestions getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArtistSuggestions(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ArtistSuggestions(Context context) {
+        file = new File(context.getFilesDir(), INDEX_FILE);
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "ArtistSuggestions");
+            }
+        });
+
+        // queued first, so the saved index is in place before any results are added
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Stop the index's thread, dropping any queued changes and pending save, for tests that
+     * replace the shared suggestions
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Suggest artists whose names have a word starting with the query
+     * @param query text typed so far
+     * @param limit maximum number of suggestions
+     * @return suggested artists, best first
+     */
+    public ArrayList<SpotifyArtist> suggest(String query, int limit) {
+        List<ArtistIndex.Match> matches = index.lookup(query, limit);
+        ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>(matches.size());
+
+        for (ArtistIndex.Match m : matches) {
+            if (m.photo == null) {
+                artists.add(new SpotifyArtist(m.id, m.name));
+            } else {
+                artists.add(new SpotifyArtist(m.id, m.name, m.photo));
+            }
+        }
+
+        return artists;
+    }
+
+    /**
+     * Add the artists from a search to the index, in the background
+     * @param artists artists found by a search, with the photos selected for the list
+     */
+    public void addResults(List<SpotifyArtist> artists) {
+        final ArrayList<SpotifyArtist> added = new ArrayList<SpotifyArtist>(artists);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (SpotifyArtist a : added) {
+                    index.add(a.id, a.name, a.getPhotoUrl());
+                }
+                changed();
+            }
+        });
+    }
+
+    /**
+     * Record that the user opened an artist, so that it ranks higher, in the background
+     * @param artist artist picked from the list
+     */
+    public void recordSelection(final SpotifyArtist artist) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // the artist may have come from the store rather than a search
+                index.add(artist.id, artist.name, artist.getPhotoUrl());
+                index.recordSelection(artist.id);
+                changed();
+            }
+        });
+    }
+
+    /**
+     * Make a change visible to suggest() and schedule a save, unless one is already due
+     */
+    private void changed() {
+        index.publish();
+
+        if (!savePending) {
+            savePending = true;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    savePending = false;
+                    save();
+                }
+            }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            index.readFrom(in);
+            Log.d(LOG_TAG, "Loaded " + index.size() + " artists, ~" + index.sizeInBytes() + " bytes");
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to load artist index", e);
+        } finally {
+            closeQuietly(in);
+        }
+
+        index.publish();
+    }
+
+    private void save() {
+        // write to a temporary file first so that a crash can't leave a half-written index
+        File temp = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            index.writeTo(out);
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                Log.e(LOG_TAG, "Unable to replace artist index");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to save artist index", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing useful to do
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.natelaclaire.spotifystreamer;
+
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OkHttp network interceptor that decides how long Spotify Web API responses may be served
+ * from the HTTP response cache. The Web API mostly marks its responses as uncacheable, so
+ * for the endpoints we call we substitute our own time-to-live. A longer lifetime sent by the
+ * server is respected, and no-store responses are left alone.
+ */
+public class CachePolicyInterceptor implements Interceptor {
+
+    // artist search results change rarely
+    static final long SEARCH_TTL_SECONDS = TimeUnit.MINUTES.toSeconds(10);
+
+    // top tracks are requested per artist and country, which is part of the URL and
+    // therefore part of the cache key
+    static final long TOP_TRACKS_TTL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    /**
+     * Rewrite the Cache-Control header of responses from endpoints with a known TTL
+     * @param chain interceptor chain
+     * @return the (possibly rewritten) network response
+     * @throws IOException
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        long ttl = ttlFor(request);
+
+        // only successful GETs are worth caching
+        if (ttl <= 0 || !"GET".equals(request.method()) || !response.isSuccessful()) {
+            return response;
+        }
+
+        CacheControl serverPolicy = response.cacheControl();
+        if (serverPolicy.noStore() || serverPolicy.maxAgeSeconds() >= ttl) {
+            return response;
+        }
+
+        return response.newBuilder()
+                .removeHeader("Pragma")
+                .header("Cache-Control", "public, max-age=" + ttl)
+                .build();
+    }
+
+    /**
+     * Look up the time-to-live for a request's endpoint
+     * @param request request being made
+     * @return TTL in seconds, or 0 if the endpoint has no override
+     */
+    static long ttlFor(Request request) {
+        String path = request.url().getPath();
+
+        if (path.endsWith("/search")) {
+            return SEARCH_TTL_SECONDS;
+        } else if (path.startsWith("/v1/artists/") && path.endsWith("/top-tracks")) {
+            return TOP_TRACKS_TTL_SECONDS;
+        }
+
+        return 0;
+    }
+}
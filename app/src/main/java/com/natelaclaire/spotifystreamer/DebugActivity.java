@@ -0,0 +1,113 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.ActionBarActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Debug screen, reached from the settings, showing what PerfStats has measured this session:
+ * latency percentiles, per-endpoint HTTP stats, counters and cache stats. The snapshot can be
+ * exported as JSON through any app that accepts text.
+ */
+public class DebugActivity extends ActionBarActivity {
+
+    private static final String LOG_TAG = DebugActivity.class.getSimpleName();
+
+    private static final int JSON_INDENT = 2;
+
+    private TextView statsView;
+
+    // JSON of the snapshot being shown, for export
+    private String json;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_debug);
+
+        statsView = (TextView) findViewById(R.id.debug_stats);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_debug, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+
+        if (id == R.id.action_refresh) {
+            refresh();
+            return true;
+        } else if (id == R.id.action_export) {
+            export();
+            return true;
+        } else if (id == R.id.action_reset) {
+            PerfStats.reset();
+            refresh();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Take a new snapshot in the background, since it opens the caches if they haven't been
+     * used yet, and show it
+     */
+    private void refresh() {
+        SpotifyClient.getInstance(this).getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject snapshot = PerfStats.snapshot(getApplicationContext());
+
+                String text;
+                try {
+                    text = snapshot.toString(JSON_INDENT);
+                } catch (JSONException e) {
+                    Log.e(LOG_TAG, "Unable to format snapshot", e);
+                    text = snapshot.toString();
+                }
+
+                final String formatted = text;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        json = formatted;
+                        statsView.setText(formatted);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Hand the snapshot being shown to another app, e.g. to mail it or save it to a drive
+     */
+    private void export() {
+        if (json == null) {
+            return;
+        }
+
+        Intent intent = new Intent(Intent.ACTION_SEND)
+                .setType("text/plain")
+                .putExtra(Intent.EXTRA_SUBJECT, getString(R.string.app_name) + " " + getString(R.string.title_activity_debug))
+                .putExtra(Intent.EXTRA_TEXT, json);
+        startActivity(Intent.createChooser(intent, getString(R.string.export_chooser_title)));
+    }
+}
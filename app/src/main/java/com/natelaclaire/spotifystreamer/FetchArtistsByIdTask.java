@@ -0,0 +1,71 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.Artists;
+
+/**
+ * Request that looks up several artists by ID in one call to the Spotify API's multiple
+ * artists endpoint, which takes up to MAX_IDS IDs. The artists are mapped to SpotifyArtist
+ * objects in the background.
+ */
+public class FetchArtistsByIdTask extends SpotifyRequest<ArrayList<SpotifyArtist>> {
+
+    // limit of the API's multiple artists endpoint
+    public static final int MAX_IDS = 50;
+
+    public final List<String> ids;
+
+    // size of the list thumbnail in pixels, used to pick the artist photo
+    private final int photoPx;
+
+    /**
+     * Constructor
+     * @param ids Spotify artist IDs, no more than MAX_IDS; the list is copied
+     * @param photoPx size of the list thumbnail in pixels
+     */
+    public FetchArtistsByIdTask(List<String> ids, int photoPx) {
+        super("artists|" + TextUtils.join(",", ids));
+
+        if (ids.size() > MAX_IDS) {
+            throw new IllegalArgumentException("At most " + MAX_IDS + " IDs per request");
+        }
+
+        this.ids = new ArrayList<String>(ids);
+        this.photoPx = photoPx;
+    }
+
+    /**
+     * Artists are looked up to fill in a list the user is looking at
+     * @return RequestScheduler.PRIORITY_SEARCH
+     */
+    @Override
+    public int getPriority() {
+        return RequestScheduler.PRIORITY_SEARCH;
+    }
+
+    /**
+     * Look up the artists in the background
+     * @param service shared SpotifyService
+     * @return the artists found, in the order of the IDs; unknown IDs are left out
+     */
+    @Override
+    protected ArrayList<SpotifyArtist> load(SpotifyService service) {
+        Artists results = service.getArtists(TextUtils.join(",", ids));
+
+        // the API answers null for IDs it doesn't know
+        ArrayList<Artist> found = new ArrayList<Artist>(results.artists.size());
+        for (Artist artist : results.artists) {
+            if (artist != null) {
+                found.add(artist);
+            }
+        }
+
+        return SpotifyMapper.toSpotifyArtists(found, photoPx);
+    }
+}
@@ -0,0 +1,111 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Pager;
+
+/**
+ * Request that searches the Spotify API for one page of artists matching a search string. The
+ * artists are mapped to SpotifyArtist objects in the background, so the UI only has to add
+ * them to the list.
+ */
+public class FetchArtistsTask extends SpotifyRequest<Pager<SpotifyArtist>> {
+
+    // query being searched for, also used as the memory cache key
+    public final String query;
+
+    // sequence number of the search; results are dropped if a newer search has started
+    public final int sequence;
+
+    // page of results to fetch
+    public final int offset;
+    public final int limit;
+
+    // whether to tell the user when nothing was found
+    public final boolean reportEmpty;
+
+    // local index that learns the artists found
+    private final ArtistSuggestions suggestions;
+
+    // size the artist photos are shown at
+    private final ImageTargets targets;
+
+    /**
+     * Constructor
+     * @param query search string
+     * @param sequence sequence number of this search
+     * @param offset index of the first result to fetch
+     * @param limit maximum number of results to fetch
+     * @param reportEmpty whether to show a message if no artists are found
+     * @param suggestions local index to add the artists found to
+     * @param targets sizes the artist photos are shown at
+     */
+    public FetchArtistsTask(String query, int sequence, int offset, int limit, boolean reportEmpty,
+                            ArtistSuggestions suggestions, ImageTargets targets) {
+        super("artists|" + MemoryCache.normalizeQuery(query) + '|' + offset + '|' + limit);
+
+        this.query = query;
+        this.sequence = sequence;
+        this.offset = offset;
+        this.limit = limit;
+        this.reportEmpty = reportEmpty;
+        this.suggestions = suggestions;
+        this.targets = targets;
+    }
+
+    /**
+     * Searches, including further pages, are what the user is waiting for
+     * @return RequestScheduler.PRIORITY_SEARCH
+     */
+    @Override
+    public int getPriority() {
+        return RequestScheduler.PRIORITY_SEARCH;
+    }
+
+    /**
+     * In the background, query the Spotify API and map the artists found
+     * @param service shared SpotifyService
+     * @return page of artists found
+     */
+    @Override
+    protected Pager<SpotifyArtist> load(SpotifyService service) {
+        PerfStats.beginSection("search");
+        long start = SystemClock.elapsedRealtime();
+
+        // perform query for one page of results
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("offset", offset);
+        options.put("limit", limit);
+
+        ArtistsPager results;
+        try {
+            results = service.searchArtists(query, options);
+        } finally {
+            PerfStats.endSection();
+        }
+
+        PerfStats.beginSection("map artists");
+
+        // return page of artists found, with the paging information of the original
+        Pager<SpotifyArtist> page = new Pager<SpotifyArtist>();
+        page.href = results.artists.href;
+        page.items = SpotifyMapper.toSpotifyArtists(results.artists.items, targets.thumbnailPx);
+        page.limit = results.artists.limit;
+        page.next = results.artists.next;
+        page.offset = results.artists.offset;
+        page.previous = results.artists.previous;
+        page.total = results.artists.total;
+
+        suggestions.addResults(page.items);
+
+        PerfStats.endSection();
+        PerfStats.record(PerfStats.SEARCH_LOAD, SystemClock.elapsedRealtime() - start);
+
+        return page;
+    }
+}
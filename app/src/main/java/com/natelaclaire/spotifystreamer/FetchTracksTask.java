@@ -0,0 +1,95 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.models.Tracks;
+
+/**
+ * Request that queries the Spotify API for an artist's top 10 tracks in a country. The tracks
+ * are mapped to SpotifyTrack objects in the background.
+ */
+public class FetchTracksTask extends SpotifyRequest<ArrayList<SpotifyTrack>> {
+
+    public final String artistId;
+    public final String country;
+
+    // whether the tracks are being fetched before the user has asked for them
+    public final boolean prefetch;
+
+    // sizes the album images are shown at
+    private final ImageTargets targets;
+
+    /**
+     * Constructor
+     * @param artistId Spotify artist ID
+     * @param country country code to get the top tracks for
+     * @param targets sizes the album images are shown at
+     */
+    public FetchTracksTask(String artistId, String country, ImageTargets targets) {
+        this(artistId, country, targets, false);
+    }
+
+    /**
+     * Constructor
+     * @param artistId Spotify artist ID
+     * @param country country code to get the top tracks for
+     * @param targets sizes the album images are shown at
+     * @param prefetch true to run in the prefetch lane
+     */
+    public FetchTracksTask(String artistId, String country, ImageTargets targets, boolean prefetch) {
+        super("tracks|" + artistId + '|' + country.toUpperCase(Locale.US));
+
+        this.artistId = artistId;
+        this.country = country;
+        this.targets = targets;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Top tracks come after searches, and prefetched ones after everything else
+     * @return RequestScheduler.PRIORITY_TRACKS or PRIORITY_PREFETCH
+     */
+    @Override
+    public int getPriority() {
+        return prefetch ? RequestScheduler.PRIORITY_PREFETCH : RequestScheduler.PRIORITY_TRACKS;
+    }
+
+    /**
+     * Query the Spotify API for artist's top 10 tracks in the background
+     * @param service shared SpotifyService
+     * @return List of found tracks
+     */
+    @Override
+    protected ArrayList<SpotifyTrack> load(SpotifyService service) {
+        // getArtistTopTrack method requires the country, which must be supplied through
+        // a Map object
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("country", country);
+
+        PerfStats.beginSection("top tracks");
+        long start = SystemClock.elapsedRealtime();
+
+        // perform query
+        Tracks results;
+        try {
+            results = service.getArtistTopTrack(artistId, options);
+        } finally {
+            PerfStats.endSection();
+        }
+
+        // return tracks found
+        PerfStats.beginSection("map tracks");
+        ArrayList<SpotifyTrack> tracks = SpotifyMapper.toSpotifyTracks(results.tracks, targets.thumbnailPx, targets.largePx);
+        PerfStats.endSection();
+
+        PerfStats.record(PerfStats.TRACKS_LOAD, SystemClock.elapsedRealtime() - start);
+
+        return tracks;
+    }
+}
@@ -0,0 +1,247 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.AbsListView;
+import android.widget.ImageView;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The app's configured Picasso instance, used for every image instead of Picasso.with().
+ * <p>
+ * The memory cache is sized from the device's memory class rather than Picasso's fixed share
+ * of it, and is emptied on memory pressure. Images are downloaded through their own OkHttp
+ * client with a dedicated disk cache, so they can't push API responses out of the HTTP cache.
+ * Bitmaps are decoded as RGB_565, since album art and photos have no alpha, which halves
+ * their size. Thumbnails are decoded already downsampled to the list thumbnail size.
+ * Picasso 2.5 doesn't reuse bitmaps through inBitmap, so the smaller decodes are what keep
+ * allocations down while scrolling.
+ */
+public class ImageLoader implements ComponentCallbacks2 {
+
+    private static final String LOG_TAG = ImageLoader.class.getSimpleName();
+
+    private static final String DISK_CACHE_DIR = "images";
+    private static final long DISK_CACHE_SIZE = 25 * 1024 * 1024;
+
+    // share of the app's memory class given to decoded bitmaps
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    private static final int CONNECT_TIMEOUT_SECONDS = 15;
+    private static final int READ_TIMEOUT_SECONDS = 20;
+
+    private static ImageLoader instance;
+
+    private final Picasso picasso;
+    private final LruCache memoryCache;
+
+    /**
+     * Returns the shared loader, creating it and registering for memory callbacks on first use
+     * @param context any Context
+     * @return the shared ImageLoader
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageLoader(context.getApplicationContext());
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    private ImageLoader(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryCacheSize = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVISOR;
+        memoryCache = new LruCache(memoryCacheSize);
+
+        OkHttpClient httpClient = new OkHttpClient();
+        httpClient.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        httpClient.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        try {
+            httpClient.setCache(new Cache(new File(context.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_SIZE));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to create image cache", e);
+        }
+
+        MetricsInterceptor metrics = new MetricsInterceptor("image");
+        httpClient.interceptors().add(metrics);
+        httpClient.networkInterceptors().add(metrics.getNetworkInterceptor());
+
+        picasso = new Picasso.Builder(context)
+                .memoryCache(memoryCache)
+                .downloader(new TracingDownloader(httpClient))
+                .defaultBitmapConfig(Bitmap.Config.RGB_565)
+                .build();
+
+        Log.d(LOG_TAG, "Memory cache " + memoryCacheSize + " bytes, disk cache " + DISK_CACHE_SIZE + " bytes");
+    }
+
+    public Picasso getPicasso() {
+        return picasso;
+    }
+
+    /**
+     * Stop Picasso's dispatcher and download threads, for tests that replace the shared loader
+     */
+    void shutdown() {
+        picasso.shutdown();
+    }
+
+    /**
+     * Start a request for a list thumbnail, decoded at the size it is shown at. Loads and
+     * prefetches of the same URL share a memory cache entry.
+     * @param url image URL
+     * @return RequestCreator to complete with into() or fetch()
+     */
+    public RequestCreator loadThumbnail(String url) {
+        return picasso.load(url)
+                .resizeDimen(R.dimen.list_thumbnail_size, R.dimen.list_thumbnail_size)
+                .centerCrop();
+    }
+
+    /**
+     * Pause the requests with a tag while a list flings, since most of the rows bound during a
+     * fling are gone before their images arrive, and resume them once scrolling slows down
+     * @param tag tag given to the list's requests
+     * @param scrollState new scroll state of the list
+     */
+    public void onScrollStateChanged(Object tag, int scrollState) {
+        if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING) {
+            picasso.pauseTag(tag);
+        } else {
+            picasso.resumeTag(tag);
+        }
+    }
+
+    /**
+     * Cancel the request loading into a view, e.g. when a recycled row no longer has an image
+     * @param view ImageView being loaded into
+     */
+    public void cancelRequest(ImageView view) {
+        picasso.cancelRequest(view);
+    }
+
+    /**
+     * Cancel all requests with a tag, e.g. when the views they load into go away
+     * @param tag tag given to the requests
+     */
+    public void cancelTag(Object tag) {
+        picasso.cancelTag(tag);
+    }
+
+    /**
+     * Release decoded bitmaps when the system needs memory back
+     * @param level how much memory is needed
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            memoryCache.evictAll();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        memoryCache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Downloads images through OkHttp as Picasso's OkHttpDownloader does, but inside a
+     * systrace section. Picasso decodes straight from the response stream and closes it on the
+     * same thread once the bitmap is decoded, so the section ends when the stream is closed
+     * and covers both the download and the decode.
+     */
+    private static class TracingDownloader implements Downloader {
+        private final OkHttpClient client;
+
+        TracingDownloader(OkHttpClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public Response load(Uri uri, int networkPolicy) throws IOException {
+            Request.Builder request = new Request.Builder().url(uri.toString());
+
+            if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+                request.cacheControl(CacheControl.FORCE_CACHE);
+            } else if (networkPolicy != 0) {
+                CacheControl.Builder cacheControl = new CacheControl.Builder();
+                if (!NetworkPolicy.shouldReadFromDiskCache(networkPolicy)) {
+                    cacheControl.noCache();
+                }
+                if (!NetworkPolicy.shouldWriteToDiskCache(networkPolicy)) {
+                    cacheControl.noStore();
+                }
+                request.cacheControl(cacheControl.build());
+            }
+
+            PerfStats.beginSection("load image");
+
+            com.squareup.okhttp.Response response;
+            try {
+                response = client.newCall(request.build()).execute();
+            } catch (IOException e) {
+                PerfStats.endSection();
+                throw e;
+            }
+
+            if (response.code() >= 300) {
+                response.body().close();
+                PerfStats.endSection();
+                throw new ResponseException(response.code() + " " + response.message(), networkPolicy,
+                        response.code());
+            }
+
+            ResponseBody body = response.body();
+            InputStream stream = new FilterInputStream(body.byteStream()) {
+                private boolean closed = false;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        PerfStats.endSection();
+                    }
+                    super.close();
+                }
+            };
+
+            return new Response(stream, response.cacheResponse() != null, body.contentLength());
+        }
+
+        @Override
+        public void shutdown() {
+            Cache cache = client.getCache();
+            if (cache != null) {
+                try {
+                    cache.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.DisplayMetrics;
+
+/**
+ * Sizes in pixels that images are shown at on this device, for ImageSelector. Worked out once
+ * from resources, so that requests can select images in the background without a Context.
+ */
+public class ImageTargets {
+
+    // list thumbnails
+    public final int thumbnailPx;
+
+    // full-width images, such as the album art on the player
+    public final int largePx;
+
+    /**
+     * Constructor
+     * @param thumbnailPx size of list thumbnails in pixels
+     * @param largePx size of full-width images in pixels
+     */
+    public ImageTargets(int thumbnailPx, int largePx) {
+        this.thumbnailPx = thumbnailPx;
+        this.largePx = largePx;
+    }
+
+    /**
+     * Targets for the current display
+     * @param context any Context
+     * @return ImageTargets for the display's size and density
+     */
+    public static ImageTargets forDisplay(Context context) {
+        Resources resources = context.getResources();
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+
+        return new ImageTargets(
+                resources.getDimensionPixelSize(R.dimen.list_thumbnail_size),
+                Math.min(metrics.widthPixels, metrics.heightPixels));
+    }
+}
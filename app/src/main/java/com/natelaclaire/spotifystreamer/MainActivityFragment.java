@@ -3,17 +3,20 @@ package com.natelaclaire.spotifystreamer;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
+import android.text.Editable;
 import android.text.TextUtils;
-import android.util.Log;
+import android.text.TextWatcher;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.EditText;
 import android.widget.ListView;
@@ -21,33 +24,143 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
-import kaaes.spotify.webapi.android.SpotifyApi;
-import kaaes.spotify.webapi.android.SpotifyError;
-import kaaes.spotify.webapi.android.SpotifyService;
-import kaaes.spotify.webapi.android.models.Artist;
-import kaaes.spotify.webapi.android.models.ArtistsPager;
-import retrofit.RetrofitError;
+import kaaes.spotify.webapi.android.models.Pager;
 
 
 /**
  * Fragment for Main activity
  */
-public class MainActivityFragment extends Fragment {
+public class MainActivityFragment extends Fragment implements RequestHolderFragment.Callbacks {
+
+    // tag of the retained fragment that runs this fragment's requests
+    private static final String REQUEST_HOLDER_TAG = "MainActivityFragment.requests";
+
+    // how long typing has to pause before a live search is started
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
+    // how many local suggestions to show, and how many are enough to skip the network
+    private static final int SUGGESTION_LIMIT = 20;
+    private static final int MIN_LOCAL_MATCHES = 3;
+
+    // the first page is kept small so that the first results show up quickly; later pages
+    // are fetched when the user scrolls to within PREFETCH_ROWS of the end of the list
+    private static final int FIRST_PAGE_SIZE = 15;
+    private static final int PAGE_SIZE = 30;
+    private static final int PREFETCH_ROWS = 5;
+
+    // a page that fails to load is retried automatically a few times, waiting twice as long
+    // each time; after that only a tap on the retry footer tries again
+    private static final long PAGE_RETRY_DELAY_MS = 2000;
+    private static final int MAX_PAGE_RETRIES = 3;
+
+    // how many stored artists to show while a search is refreshed from the network
+    private static final int STORED_ARTISTS_LIMIT = 100;
+
+    // how many of the artists at the top of the visible list to prefetch top tracks for
+    private static final int PREFETCH_ARTISTS = 3;
 
     private ArtistAdapter artistAdapter;
+    private ListView artistList;
+
+    // fetches the top tracks of the artists the user is most likely to tap
+    private TrackPrefetcher trackPrefetcher;
+
+    // runs requests and keeps the list of artists across configuration changes
+    private RequestHolderFragment requestHolder;
+
+    // dialog to show Loading message, and the key of the request it is waiting for
+    private ProgressDialog dialog;
+    private String loadingKey;
+
+    private final Handler handler = new Handler();
+
+    // the search box being watched for live searches
+    private EditText searchBox;
+
+    // last query searched for, so that unchanged text doesn't trigger another search
+    private String lastQuery;
+
+    // incremented for every search; only the latest search may update the list
+    private int searchSequence = 0;
+
+    // key of the search request currently in flight, if any
+    private String currentKey;
+
+    // when the latest search was started, for measuring how long its results take to show
+    private long searchStartedAt;
+
+    // offset of the next page of results for lastQuery, and the total number of results
+    // (UNKNOWN_TOTAL if not known); NO_MORE_PAGES when the list isn't from a network search
+    private static final int NO_MORE_PAGES = -1;
+    private static final int UNKNOWN_TOTAL = -1;
+    private int nextOffset = NO_MORE_PAGES;
+    private int total = UNKNOWN_TOTAL;
+
+    // offset of the page that last failed to load, so that scrolling doesn't fetch it again
+    // straight away (NO_FAILED_PAGE if none), and how many times it has been retried
+    private static final int NO_FAILED_PAGE = -1;
+    private int failedOffset = NO_FAILED_PAGE;
+    private int pageRetries = 0;
+
+    // footer under the list that offers to retry a failed page
+    private View retryFooter;
+
+    // runs a live search once typing pauses
+    private final Runnable liveSearch = new Runnable() {
+        @Override
+        public void run() {
+            String query = searchBox.getText().toString();
+
+            if (lastQuery == null
+                    || !MemoryCache.normalizeQuery(query).equals(MemoryCache.normalizeQuery(lastQuery))) {
+                fetchArtists(query, false);
+            }
+        }
+    };
+
+    // fetches the page that failed again, once its back-off has passed
+    private final Runnable retryPage = new Runnable() {
+        @Override
+        public void run() {
+            retryNextPage();
+        }
+    };
 
     public MainActivityFragment() {
     }
 
     /**
-     * Store the List of artists in the Bundle
+     * Store the List of artists and the search state in the Bundle; on a configuration change
+     * the list is also kept by the request holder, but the Bundle is still needed if the
+     * process is killed. A list too big for the Bundle is saved as artist IDs and restored
+     * from the SpotifyStore.
      * @param outState
      */
     @Override
     public void onSaveInstanceState(Bundle outState) {
-        outState.putParcelableArrayList("artists", artistAdapter.getArtists());
+        byte[] artists = CompactListCodec.encodeArtists(artistAdapter.getArtists());
+
+        if (CompactListCodec.fitsInBundle(artists)) {
+            outState.putByteArray("artists", artists);
+        } else {
+            ArrayList<String> artistIds = new ArrayList<String>(artistAdapter.getCount());
+            for (SpotifyArtist artist : artistAdapter.getArtists()) {
+                artistIds.add(artist.id);
+            }
+            outState.putStringArrayList("artistIds", artistIds);
+        }
+
+        outState.putString("query", lastQuery);
+        outState.putInt("nextOffset", nextOffset);
+        outState.putInt("total", total);
+        outState.putInt("failedOffset", failedOffset);
+        outState.putInt("sequence", searchSequence);
+        outState.putString("currentKey", currentKey);
+        outState.putLong("searchStartedAt", searchStartedAt);
+        outState.putString("loadingKey", loadingKey);
         super.onSaveInstanceState(outState);
     }
 
@@ -56,6 +169,15 @@ public class MainActivityFragment extends Fragment {
         super.onCreate(savedInstanceState);
 
         setHasOptionsMenu(true);
+
+        requestHolder = RequestHolderFragment.get(getActivity(), REQUEST_HOLDER_TAG);
+        trackPrefetcher = new TrackPrefetcher(getActivity());
+    }
+
+    @Override
+    public void onDestroy() {
+        trackPrefetcher.cancelAll();
+        super.onDestroy();
     }
 
     /**
@@ -70,39 +192,103 @@ public class MainActivityFragment extends Fragment {
                              Bundle savedInstanceState) {
         View rootView = inflater.inflate(R.layout.fragment_main, container, false);
 
-        ArrayList<SpotifyArtist> artists;
+        // after a configuration change the request holder still has the List of artists
+        @SuppressWarnings("unchecked")
+        ArrayList<SpotifyArtist> artists = (ArrayList<SpotifyArtist>) requestHolder.getRetained("artists");
+
+        if (savedInstanceState != null) {
+            lastQuery = savedInstanceState.getString("query");
+            nextOffset = savedInstanceState.getInt("nextOffset", NO_MORE_PAGES);
+            total = savedInstanceState.getInt("total", UNKNOWN_TOTAL);
+            failedOffset = savedInstanceState.getInt("failedOffset", NO_FAILED_PAGE);
+            searchSequence = savedInstanceState.getInt("sequence");
+            currentKey = savedInstanceState.getString("currentKey");
+            searchStartedAt = savedInstanceState.getLong("searchStartedAt");
+            loadingKey = savedInstanceState.getString("loadingKey");
+        }
 
-        // if a saved instance state Bundle was supplied and contains a List of artists,
-        // use it; otherwise, create an empty List
-        if (savedInstanceState == null || !savedInstanceState.containsKey("artists")) {
-            artists = new ArrayList<SpotifyArtist>();
-        } else {
-            artists = savedInstanceState.getParcelableArrayList("artists");
+        // otherwise, if a saved instance state Bundle was supplied and contains a List of
+        // artists, use it; failing that, create an empty List
+        ArrayList<String> artistIds = null;
+
+        if (artists == null) {
+            if (savedInstanceState != null && savedInstanceState.containsKey("artists")) {
+                artists = CompactListCodec.decodeArtists(savedInstanceState.getByteArray("artists"));
+            } else {
+                artists = new ArrayList<SpotifyArtist>();
+
+                if (savedInstanceState != null) {
+                    artistIds = savedInstanceState.getStringArrayList("artistIds");
+                }
+            }
+            requestHolder.putRetained("artists", artists);
         }
 
         // instantiate the ArtistAdapter
         artistAdapter = new ArtistAdapter(
                 getActivity(),
-                artists
+                artists,
+                this
         );
 
         ListView lv = (ListView)rootView.findViewById(R.id.artist_list);
+
+        // the footer has to be added before the adapter is set on older versions
+        View footer = inflater.inflate(R.layout.list_item_load_more, lv, false);
+        lv.addFooterView(footer, null, false);
+        retryFooter = footer.findViewById(R.id.load_more_retry);
+        retryFooter.setVisibility(failedOffset == NO_FAILED_PAGE ? View.GONE : View.VISIBLE);
+        retryFooter.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                pageRetries = 0;
+                retryNextPage();
+            }
+        });
+
         lv.setAdapter(artistAdapter);
+        artistList = lv;
+
+        if (artistIds != null) {
+            restoreArtists(artistIds);
+        }
 
         // when an item is clicked, we launch the TopTenTracksActivity, providing
-        // the SpotifyArtist object in the Intent (it is Parcelable)
+        // the SpotifyArtist object in the Intent as a ParcelableArtist
         lv.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
                 SpotifyArtist artist = artistAdapter.getItem(position);
 
+                ArtistSuggestions.getInstance(getActivity()).recordSelection(artist);
+
                 Intent artistIntent = new Intent(getActivity(), TopTenTracksActivity.class)
-                        .putExtra(Intent.EXTRA_TEXT, artist);
+                        .putExtra(Intent.EXTRA_TEXT, new ParcelableArtist(artist));
                 startActivity(artistIntent);
             }
         });
 
-        EditText searchBox = (EditText)rootView.findViewById(R.id.artist_search);
+        // fetch the next page of results in the background as the end of the list comes near,
+        // and prefetch top tracks for the artists the list settles on
+        lv.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                ImageLoader.getInstance(getActivity()).onScrollStateChanged(MainActivityFragment.this, scrollState);
+
+                if (scrollState == SCROLL_STATE_IDLE) {
+                    prefetchVisibleTracks();
+                }
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount - PREFETCH_ROWS) {
+                    fetchNextPage();
+                }
+            }
+        });
+
+        searchBox = (EditText)rootView.findViewById(R.id.artist_search);
 
         // handle the "Search" key on the soft keyboard
         // based on http://stackoverflow.com/questions/3205339/android-how-to-make-keyboard-enter-button-say-search-and-handle-its-click
@@ -121,7 +307,9 @@ public class MainActivityFragment extends Fragment {
                         imm.hideSoftInputFromWindow(view.getWindowToken(), 0);
                     }
 
-                    // populate the list using the entered search string
+                    // populate the list using the entered search string, without waiting
+                    // for the live search
+                    handler.removeCallbacks(liveSearch);
                     fetchArtists(searchBox);
 
                     return true;
@@ -134,124 +322,464 @@ public class MainActivityFragment extends Fragment {
     }
 
     /**
-     * fetch artists that match the search string
-     * @param view TextView of the search box
+     * Start watching the search box once its saved text has been restored, so that
+     * restoring it doesn't count as typing
+     * @param savedInstanceState
      */
-    public void fetchArtists(TextView view) {
-        // check to see if the artist_search EditText is empty
-        if (!TextUtils.isEmpty(view.getText())) {
+    @Override
+    public void onViewStateRestored(Bundle savedInstanceState) {
+        super.onViewStateRestored(savedInstanceState);
 
-            // if not empty, execute the AsyncTask to find the artist
-            String artistName = view.getText().toString();
+        searchBox.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(liveSearch);
+
+                // the results for this query are already showing, or on their way, e.g. after
+                // a trailing space or retyping a deleted letter
+                if (lastQuery != null
+                        && MemoryCache.normalizeQuery(s.toString()).equals(MemoryCache.normalizeQuery(lastQuery))) {
+                    return;
+                }
 
-            FetchArtistsTask task = new FetchArtistsTask();
-            task.execute(artistName);
+                // the network is only needed when the local index can't answer
+                if (!suggestArtists(s.toString())) {
+                    handler.postDelayed(liveSearch, SEARCH_DEBOUNCE_MS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Start receiving finished requests, including any that finished while the Activity was
+     * being recreated, and bring back the Loading dialog if its search is still running
+     * @param savedInstanceState
+     */
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+
+        requestHolder.setCallbacks(this);
+
+        if (currentKey != null && !requestHolder.isRunning(currentKey)) {
+            currentKey = null;
+        }
+
+        if (loadingKey != null && requestHolder.isRunning(loadingKey)) {
+            showLoading(loadingKey);
+        } else {
+            loadingKey = null;
         }
     }
 
     /**
-     * AsyncTask to search the Spotify API for the artist name entered
+     * Stop a pending live search when the view goes away; a search in flight carries on in the
+     * request holder and is delivered to the next instance of this fragment
      */
-    public class FetchArtistsTask extends AsyncTask<String, Void, List<Artist>> {
+    @Override
+    public void onDestroyView() {
+        handler.removeCallbacks(liveSearch);
+        handler.removeCallbacks(retryPage);
 
-        private final String LOG_TAG = FetchArtistsTask.class.getSimpleName();
+        // the images of this fragment's rows are no longer wanted
+        ImageLoader.getInstance(getActivity()).cancelTag(this);
 
-        // dialog to show Loading message
-        private ProgressDialog dialog = new ProgressDialog(getActivity());
+        // the dialog would leak its window, but loadingKey is kept so it can be shown again
+        if (dialog != null) {
+            dialog.dismiss();
+            dialog = null;
+        }
 
-        /**
-         * Before executing the search, display Loading dialog
-         */
-        @Override
-        protected void onPreExecute() {
-            this.dialog.setMessage("Loading...");
-            this.dialog.show();
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onDetach() {
+        requestHolder.setCallbacks(null);
+        super.onDetach();
+    }
+
+    /**
+     * fetch artists that match the search string
+     * @param view TextView of the search box
+     */
+    public void fetchArtists(TextView view) {
+        fetchArtists(view.getText().toString(), true);
+    }
+
+    /**
+     * fetch artists that match the search string, replacing any search in flight
+     * @param artistName search string
+     * @param explicit true if the user asked for the search with the Search key, false for
+     *                 live searches while typing
+     */
+    private void fetchArtists(String artistName, boolean explicit) {
+        // a newer search always supersedes the one in flight
+        cancelSearch();
+
+        // check to see if the search string is empty
+        if (TextUtils.isEmpty(artistName.trim())) {
+            return;
         }
 
-        /**
-         * In the background, query the Spotify API
-         * @param strings array containing String representing search query
-         * @return List of artists found
-         */
-        @Override
-        protected List<Artist> doInBackground(String... strings) {
+        lastQuery = artistName;
+        int sequence = ++searchSequence;
+        searchStartedAt = SystemClock.elapsedRealtime();
+
+        // if this query has been answered recently, show those results right away; paging
+        // carries on from the end of the cached list
+        ResultCache.Entry<ArrayList<SpotifyArtist>> cached =
+                MemoryCache.getInstance(getActivity()).getArtists(artistName);
+
+        if (cached != null) {
+            showArtists(cached.value);
+            nextOffset = cached.value.size();
+            total = UNKNOWN_TOTAL;
+            prefetchVisibleTracks();
 
-            SpotifyApi api = new SpotifyApi();
-            SpotifyService service = api.getService();
+            if (!cached.isStale()) {
+                return;
+            }
+        }
 
-            try {
-                // perform query
-                ArtistsPager results = service.searchArtists(strings[0]);
+        // otherwise search for the artist in the background; the Loading dialog is only shown
+        // for explicit searches with nothing to show yet, since it would get in the way of typing
+        FetchArtistsTask task = new FetchArtistsTask(artistName, sequence, 0, FIRST_PAGE_SIZE, explicit,
+                ArtistSuggestions.getInstance(getActivity()), ImageTargets.forDisplay(getActivity()));
 
-                // return list of artists found
-                List<Artist> artists = results.artists.items;
+        currentKey = task.getKey();
+        requestHolder.execute(task);
+
+        if (explicit && cached == null) {
+            showLoading(currentKey);
+        }
+
+        // in the meantime, show what was stored the last time this was searched for
+        if (cached == null) {
+            showStoredArtists(artistName, sequence);
+        }
+    }
 
-                return artists;
-            } catch (RetrofitError error) {
-                SpotifyError spotifyError = SpotifyError.fromRetrofitError(error);
-                Log.e(LOG_TAG, "Error ", spotifyError);
+    /**
+     * Show the artists stored for a query while the network search runs, unless the search
+     * has already finished or been replaced
+     * @param query search string
+     * @param sequence sequence number of the search
+     */
+    private void showStoredArtists(String query, final int sequence) {
+        final String key = currentKey;
+
+        SpotifyStore.getInstance(getActivity()).loadArtists(query, STORED_ARTISTS_LIMIT,
+                new SpotifyStore.Callback<ArrayList<SpotifyArtist>>() {
+            @Override
+            public void onLoaded(ArrayList<SpotifyArtist> artists) {
+                if (!isAdded() || sequence != searchSequence || key == null || !key.equals(currentKey)
+                        || artists.isEmpty()) {
+                    return;
+                }
+
+                showArtists(artists);
+
+                // there is something to look at now, so the network search carries on quietly
+                if (key.equals(loadingKey)) {
+                    hideLoading();
+                }
+
+                prefetchVisibleTracks();
             }
+        });
+    }
 
-            return null;
+    /**
+     * Restore a list of artists that was saved as IDs, from the SpotifyStore, looking up any
+     * it no longer has through the ArtistHydrator
+     * @param artistIds IDs of the artists that were in the list
+     */
+    private void restoreArtists(final ArrayList<String> artistIds) {
+        SpotifyStore.getInstance(getActivity()).loadArtistsById(artistIds,
+                new SpotifyStore.Callback<ArrayList<SpotifyArtist>>() {
+            @Override
+            public void onLoaded(ArrayList<SpotifyArtist> artists) {
+                // the user may have started something new in the meantime
+                if (!isAdded() || !artistAdapter.isEmpty()) {
+                    return;
+                }
 
+                if (artists.size() == artistIds.size()) {
+                    showArtists(artists);
+                } else {
+                    hydrateArtists(artistIds, artists);
+                }
+            }
+        });
+    }
+
+    /**
+     * Look up the artists the SpotifyStore no longer has, in batches, and then show the
+     * whole list in its original order
+     * @param artistIds IDs of the artists in the list, in order
+     * @param stored artists found in the SpotifyStore
+     */
+    private void hydrateArtists(final ArrayList<String> artistIds, ArrayList<SpotifyArtist> stored) {
+        final HashMap<String, SpotifyArtist> byId = new HashMap<String, SpotifyArtist>();
+        for (SpotifyArtist artist : stored) {
+            byId.put(artist.id, artist);
         }
 
-        /**
-         * After query completes, replace the current list of artists with the results of the query
-         * @param artists List of found artists
-         */
-        @Override
-        protected void onPostExecute(List<Artist> artists) {
-            if (artists != null) {
-                // clear the current list
-                artistAdapter.clear();
-
-                // loop through artists found to add them to the list
-                for (Artist a : artists) {
-                    Log.v(LOG_TAG, a.name);
-
-                    if (a.images!=null && !a.images.isEmpty()) {
-                        // there are images
-
-                        if (a.images.size()>2) {
-                            // we prefer not the smallest or largest image, so if there are at least 3
-                            // images, take the second to last
-                            artistAdapter.add(new SpotifyArtist(
-                                    a.id,
-                                    a.name,
-                                    a.images.get(a.images.size() - 2).url
-                            ));
-                        } else {
-                            // if there are only 1 or 2 images, take the smallest (the last)
-                            artistAdapter.add(new SpotifyArtist(
-                                    a.id,
-                                    a.name,
-                                    a.images.get(a.images.size() - 1).url
-                            ));
-                        }
-
-                    } else {
-                        // no images are available
-                        artistAdapter.add(new SpotifyArtist(
-                                a.id,
-                                a.name
-                        ));
-                    }
+        ArrayList<String> missing = new ArrayList<String>();
+        for (String id : artistIds) {
+            if (!byId.containsKey(id)) {
+                missing.add(id);
+            }
+        }
 
+        ArtistHydrator.getInstance(getActivity()).hydrate(missing,
+                new SpotifyStore.Callback<ArrayList<SpotifyArtist>>() {
+            @Override
+            public void onLoaded(ArrayList<SpotifyArtist> found) {
+                if (!isAdded() || !artistAdapter.isEmpty()) {
+                    return;
                 }
 
-                // if no artists were found matching request, show a message in a Toast
-                if (artists.isEmpty()) {
-                    Toast.makeText(getActivity(), getString(R.string.no_artists_message), Toast.LENGTH_SHORT).show();
+                for (SpotifyArtist artist : found) {
+                    byId.put(artist.id, artist);
                 }
+
+                ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>(artistIds.size());
+                for (String id : artistIds) {
+                    if (byId.containsKey(id)) {
+                        artists.add(byId.get(id));
+                    }
+                }
+                showArtists(artists);
+            }
+        });
+    }
+
+    /**
+     * Fetch the next page of results for the current search, if there is one and nothing is
+     * already being fetched
+     */
+    private void fetchNextPage() {
+        if (currentKey != null || lastQuery == null || nextOffset == NO_MORE_PAGES
+                || (total != UNKNOWN_TOTAL && nextOffset >= total) || failedOffset == nextOffset) {
+            return;
+        }
+
+        FetchArtistsTask task = new FetchArtistsTask(lastQuery, searchSequence, nextOffset, PAGE_SIZE, false,
+                ArtistSuggestions.getInstance(getActivity()), ImageTargets.forDisplay(getActivity()));
+
+        currentKey = task.getKey();
+        requestHolder.execute(task);
+    }
+
+    /**
+     * Fetch the page that failed to load again, after its back-off or when the user taps the
+     * retry footer
+     */
+    private void retryNextPage() {
+        handler.removeCallbacks(retryPage);
+        failedOffset = NO_FAILED_PAGE;
+        retryFooter.setVisibility(View.GONE);
+
+        fetchNextPage();
+    }
+
+    /**
+     * Remember that a page failed to load, offer to retry it and schedule an automatic retry
+     * unless there have been too many already
+     * @param offset offset of the page
+     */
+    private void onPageFailed(int offset) {
+        failedOffset = offset;
+        retryFooter.setVisibility(View.VISIBLE);
+
+        if (pageRetries < MAX_PAGE_RETRIES) {
+            handler.postDelayed(retryPage, PAGE_RETRY_DELAY_MS << pageRetries);
+            pageRetries++;
+        }
+    }
+
+    /**
+     * Forget about a failed page, when a page loads or the list is replaced
+     */
+    private void clearPageFailure() {
+        handler.removeCallbacks(retryPage);
+        failedOffset = NO_FAILED_PAGE;
+        pageRetries = 0;
+
+        if (retryFooter != null) {
+            retryFooter.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Show artists from the local index that match what has been typed so far
+     * @param text contents of the search box
+     * @return true if the index had enough matches that no network search is needed
+     */
+    private boolean suggestArtists(String text) {
+        ArrayList<SpotifyArtist> suggestions =
+                ArtistSuggestions.getInstance(getActivity()).suggest(text, SUGGESTION_LIMIT);
+
+        if (suggestions.isEmpty()) {
+            return false;
+        }
+
+        // the suggestions replace whatever a search in flight was going to show, so the
+        // network results on screen no longer belong to lastQuery
+        cancelSearch();
+        searchSequence++;
+        nextOffset = NO_MORE_PAGES;
+        lastQuery = null;
+        showArtists(suggestions);
+
+        return suggestions.size() >= MIN_LOCAL_MATCHES;
+    }
+
+    /**
+     * Prefetch top tracks for the first few visible artists; prefetches for artists that have
+     * been scrolled away from are cancelled
+     */
+    private void prefetchVisibleTracks() {
+        int first = artistList.getFirstVisiblePosition();
+        int end = Math.min(first + PREFETCH_ARTISTS, artistAdapter.getCount());
+
+        ArrayList<SpotifyArtist> visible = new ArrayList<SpotifyArtist>(PREFETCH_ARTISTS);
+        for (int i = first; i < end; i++) {
+            visible.add(artistAdapter.getItem(i));
+        }
+
+        trackPrefetcher.prefetch(visible);
+    }
+
+    /**
+     * Cancel the search in flight, including its HTTP call, and any prefetching for the
+     * results it replaces
+     */
+    private void cancelSearch() {
+        if (currentKey != null) {
+            requestHolder.cancel(currentKey);
+            currentKey = null;
+        }
+
+        clearPageFailure();
+
+        trackPrefetcher.cancelAll();
+
+        hideLoading();
+    }
+
+    /**
+     * Display the Loading dialog until the given request finishes
+     * @param key key of the request
+     */
+    private void showLoading(String key) {
+        loadingKey = key;
+
+        if (dialog == null) {
+            dialog = new ProgressDialog(getActivity());
+            dialog.setMessage("Loading...");
+        }
+        dialog.show();
+    }
+
+    /**
+     * Close the Loading dialog
+     */
+    private void hideLoading() {
+        loadingKey = null;
+
+        if (dialog != null && dialog.isShowing()) {
+            dialog.dismiss();
+        }
+    }
+
+    /**
+     * Replace the current list of artists with already-mapped results
+     * @param artists List of SpotifyArtist objects to show
+     */
+    private void showArtists(List<SpotifyArtist> artists) {
+        artistAdapter.replaceAll(artists);
+    }
+
+    /**
+     * Receive a finished request from the request holder
+     * @param request the finished request
+     */
+    @Override
+    public void onRequestFinished(SpotifyRequest<?> request) {
+        if (request instanceof FetchArtistsTask) {
+            onArtistsFetched((FetchArtistsTask) request);
+        }
+    }
+
+    /**
+     * After query completes, replace the current list of artists with the results of the
+     * query, or append them if this was a later page
+     * @param task the finished search
+     */
+    private void onArtistsFetched(FetchArtistsTask task) {
+        Pager<SpotifyArtist> page = task.getResult();
+        int offset = task.offset;
+
+        if (task.getKey().equals(currentKey)) {
+            currentKey = null;
+        }
+
+        // close Loading dialog
+        if (task.getKey().equals(loadingKey)) {
+            hideLoading();
+        }
+
+        // a newer search has started since this one, so these results are out of date
+        if (task.sequence != searchSequence) {
+            page = null;
+        } else if (page == null && offset > 0) {
+            // a later page failed; keep the list, and hold off fetching the page again
+            onPageFailed(offset);
+        }
+
+        if (page != null) {
+            List<SpotifyArtist> artists = page.items;
+
+            // remember where the next page starts
+            nextOffset = page.next == null ? NO_MORE_PAGES : page.offset + artists.size();
+            total = page.total;
+
+            // the artists were mapped in the background, so the list only needs one update: the
+            // first page replaces the current list, later pages are appended without duplicates
+            if (offset == 0) {
+                artistAdapter.replaceAll(artists);
+                long searchMillis = SystemClock.elapsedRealtime() - searchStartedAt;
+                PerfStats.record(PerfStats.SEARCH_TO_ROWS, searchMillis);
+                SpotifyStreamerApplication.onFirstSearchShown(searchMillis);
+            } else {
+                artistAdapter.appendAll(artists);
+                clearPageFailure();
             }
 
-            // close Loading dialog
-            if (dialog.isShowing()) {
-                dialog.dismiss();
+            // remember the mapped results so that repeating the query is instant
+            MemoryCache.getInstance(getActivity()).putArtists(task.query, artistAdapter.getArtists());
+            SpotifyStore.getInstance(getActivity()).saveArtists(task.query, artistAdapter.getArtists());
+
+            // the user is likely to tap one of the first results
+            if (offset == 0) {
+                prefetchVisibleTracks();
             }
 
-            super.onPostExecute(artists);
+            // if no artists were found matching request, show a message in a Toast
+            if (offset == 0 && artists.isEmpty() && task.reportEmpty) {
+                Toast.makeText(getActivity(), getString(R.string.no_artists_message), Toast.LENGTH_SHORT).show();
+            }
         }
     }
 }
@@ -0,0 +1,200 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process cache of already-mapped search and top tracks results, so that a repeated query
+ * can fill the list immediately without going through an AsyncTask. Artist lists are keyed by
+ * the normalized search string and track lists by artist ID and country; every artist that
+ * passes through is also cached by ID. The cache gives its memory back when the system
+ * reports memory pressure.
+ */
+public class MemoryCache implements ComponentCallbacks2 {
+
+    private static final int MAX_ENTRIES = 50;
+    private static final long MAX_BYTES = 512 * 1024;
+
+    // single artists are small, so many more of them are kept
+    private static final int MAX_ARTIST_ENTRIES = 500;
+    private static final long MAX_ARTIST_BYTES = 128 * 1024;
+
+    // match the lifetimes used by the HTTP response cache
+    private static final long ARTISTS_FRESH_MS = TimeUnit.SECONDS.toMillis(CachePolicyInterceptor.SEARCH_TTL_SECONDS);
+    private static final long TRACKS_FRESH_MS = TimeUnit.SECONDS.toMillis(CachePolicyInterceptor.TOP_TRACKS_TTL_SECONDS);
+
+    // rough per-object overhead used when estimating sizes
+    private static final int OBJECT_OVERHEAD = 48;
+
+    private static MemoryCache instance;
+
+    private final ResultCache<ArrayList<SpotifyArtist>> artists;
+    private final ResultCache<ArrayList<SpotifyTrack>> tracks;
+    private final ResultCache<SpotifyArtist> artistsById;
+
+    /**
+     * Returns the shared cache, creating it and registering for memory callbacks on first use
+     * @param context any Context
+     * @return the shared MemoryCache
+     */
+    public static synchronized MemoryCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new MemoryCache();
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    private MemoryCache() {
+        artists = new ResultCache<ArrayList<SpotifyArtist>>(MAX_ENTRIES, MAX_BYTES, ARTISTS_FRESH_MS,
+                new ResultCache.Sizer<ArrayList<SpotifyArtist>>() {
+                    @Override
+                    public long sizeOf(ArrayList<SpotifyArtist> list) {
+                        long size = OBJECT_OVERHEAD;
+                        for (SpotifyArtist a : list) {
+                            size += artistSize(a);
+                        }
+                        return size;
+                    }
+                });
+
+        artistsById = new ResultCache<SpotifyArtist>(MAX_ARTIST_ENTRIES, MAX_ARTIST_BYTES, ARTISTS_FRESH_MS,
+                new ResultCache.Sizer<SpotifyArtist>() {
+                    @Override
+                    public long sizeOf(SpotifyArtist artist) {
+                        return artistSize(artist);
+                    }
+                });
+
+        tracks = new ResultCache<ArrayList<SpotifyTrack>>(MAX_ENTRIES, MAX_BYTES, TRACKS_FRESH_MS,
+                new ResultCache.Sizer<ArrayList<SpotifyTrack>>() {
+                    @Override
+                    public long sizeOf(ArrayList<SpotifyTrack> list) {
+                        long size = OBJECT_OVERHEAD;
+                        for (SpotifyTrack t : list) {
+                            size += OBJECT_OVERHEAD + stringSize(t.name) + stringSize(t.albumName)
+                                    + (t.getAlbumImageSmallUrl() == null ? 0 : OBJECT_OVERHEAD + stringSize(t.getAlbumImageSmallUrl()))
+                                    + (t.getAlbumImageLargeUrl() == null ? 0 : OBJECT_OVERHEAD + stringSize(t.getAlbumImageLargeUrl()))
+                                    + (t.getPreviewUrl() == null ? 0 : OBJECT_OVERHEAD + stringSize(t.getPreviewUrl()));
+                        }
+                        return size;
+                    }
+                });
+    }
+
+    /**
+     * Normalize a search string so that trivially different queries share a cache entry
+     * @param query search string as entered
+     * @return trimmed, lower case query with runs of whitespace collapsed
+     */
+    public static String normalizeQuery(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+
+    public ResultCache.Entry<ArrayList<SpotifyArtist>> getArtists(String query) {
+        return artists.get(normalizeQuery(query));
+    }
+
+    /**
+     * Store the artists found for a query; a copy of the list is stored
+     * @param query search string
+     * @param found artists found
+     */
+    public void putArtists(String query, ArrayList<SpotifyArtist> found) {
+        artists.put(normalizeQuery(query), new ArrayList<SpotifyArtist>(found));
+
+        for (SpotifyArtist artist : found) {
+            artistsById.put(artist.id, artist);
+        }
+    }
+
+    public ResultCache.Entry<SpotifyArtist> getArtist(String id) {
+        return artistsById.get(id);
+    }
+
+    /**
+     * Store a single artist, looked up by ID
+     * @param artist artist found
+     */
+    public void putArtist(SpotifyArtist artist) {
+        artistsById.put(artist.id, artist);
+    }
+
+    public ResultCache.Entry<ArrayList<SpotifyTrack>> getTracks(String artistId, String country) {
+        return tracks.get(tracksKey(artistId, country));
+    }
+
+    /**
+     * Store the top tracks for an artist in a country; a copy of the list is stored
+     * @param artistId Spotify artist ID
+     * @param country country code the tracks were requested for
+     * @param found tracks found
+     */
+    public void putTracks(String artistId, String country, ArrayList<SpotifyTrack> found) {
+        tracks.put(tracksKey(artistId, country), new ArrayList<SpotifyTrack>(found));
+    }
+
+    /**
+     * Number of lookups answered, across searches, artists and top tracks
+     * @return hit count
+     */
+    public int getHitCount() {
+        return artists.getHitCount() + artistsById.getHitCount() + tracks.getHitCount();
+    }
+
+    /**
+     * Number of lookups that found nothing, across searches, artists and top tracks
+     * @return miss count
+     */
+    public int getMissCount() {
+        return artists.getMissCount() + artistsById.getMissCount() + tracks.getMissCount();
+    }
+
+    private static String tracksKey(String artistId, String country) {
+        return artistId + '|' + country.toUpperCase(Locale.US);
+    }
+
+    private static long artistSize(SpotifyArtist a) {
+        return OBJECT_OVERHEAD + stringSize(a.id) + stringSize(a.name)
+                + (a.getPhotoUrl() == null ? 0 : OBJECT_OVERHEAD + stringSize(a.getPhotoUrl()));
+    }
+
+    private static long stringSize(String s) {
+        // String object plus two bytes per char
+        return s == null ? 0 : OBJECT_OVERHEAD + 2 * s.length();
+    }
+
+    /**
+     * Give memory back according to how much pressure the system is under
+     * @param level trim level supplied by the system
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            artists.evictAll();
+            tracks.evictAll();
+            artistsById.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW
+                || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            artists.trimToFraction(0.5f);
+            tracks.trimToFraction(0.5f);
+            artistsById.trimToFraction(0.5f);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        artists.evictAll();
+        tracks.evictAll();
+        artistsById.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
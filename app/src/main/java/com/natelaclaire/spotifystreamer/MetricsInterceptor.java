@@ -0,0 +1,173 @@
+package com.natelaclaire.spotifystreamer;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * OkHttp interceptor that records, per endpoint, the latency until the response headers
+ * arrive, the body bytes received from the network and whether the response cache answered,
+ * into PerfStats. It is added as an application interceptor, so that it sees cache hits;
+ * getNetworkInterceptor() is added as a network interceptor to count the network attempts each
+ * call takes, so that retries and redirects show up too, and the bytes read from the network.
+ * <p>
+ * The network bytes are counted as the body is read and recorded when it is closed, below
+ * OkHttp's transparent gzip decoding, so they are the bytes that came over the wire whether
+ * or not the server announced a Content-Length.
+ * <p>
+ * Calls are made synchronously on the caller's thread (Retrofit and Picasso both do), which
+ * is what lets the two interceptors share ThreadLocals.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    // which client the calls come from, e.g. "api"
+    private final String client;
+
+    // network attempts made by the call in progress on each thread
+    private final ThreadLocal<int[]> attempts = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    // endpoint of the call in progress on each thread
+    private final ThreadLocal<PerfStats.Endpoint> currentEndpoint = new ThreadLocal<PerfStats.Endpoint>();
+
+    private final Interceptor networkInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            attempts.get()[0]++;
+            Response response = chain.proceed(chain.request());
+
+            PerfStats.Endpoint endpoint = currentEndpoint.get();
+            ResponseBody body = response.body();
+            if (endpoint == null || body == null) {
+                return response;
+            }
+
+            ResponseBody counted = ResponseBody.create(body.contentType(), body.contentLength(),
+                    Okio.buffer(new CountingSource(body.source(), endpoint)));
+            return response.newBuilder().body(counted).build();
+        }
+    };
+
+    /**
+     * Constructor
+     * @param client name of the client, used as the prefix of the endpoint names
+     */
+    public MetricsInterceptor(String client) {
+        this.client = client;
+    }
+
+    /**
+     * Interceptor to add to the client's network interceptors
+     * @return network interceptor counting attempts and bytes
+     */
+    public Interceptor getNetworkInterceptor() {
+        return networkInterceptor;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        PerfStats.Endpoint endpoint = PerfStats.endpoint(client + " " + endpointOf(request));
+
+        int[] count = attempts.get();
+        count[0] = 0;
+        currentEndpoint.set(endpoint);
+        long start = System.nanoTime();
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            // includes calls cancelled while in flight
+            endpoint.recordError();
+            throw e;
+        } finally {
+            currentEndpoint.remove();
+        }
+
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        if (!response.isSuccessful()) {
+            endpoint.recordError();
+        }
+
+        // OkHttp keeps the cached response on a call whose revalidation came back with a new
+        // body, so only a 304 means the cache answered after asking the network
+        Response networkResponse = response.networkResponse();
+        boolean fromCache = response.cacheResponse() != null
+                && (networkResponse == null || networkResponse.code() == HttpURLConnection.HTTP_NOT_MODIFIED);
+
+        endpoint.recordCall(millis, fromCache, networkResponse != null, count[0]);
+
+        return response;
+    }
+
+    /**
+     * Name of the endpoint a request goes to, with IDs left out so that calls for different
+     * artists are counted together
+     * @param request request being made
+     * @return endpoint name, e.g. "search" or "top-tracks"
+     */
+    static String endpointOf(Request request) {
+        String path = request.url().getPath();
+
+        if (path.endsWith("/search")) {
+            return "search";
+        } else if (path.startsWith("/v1/artists/") && path.endsWith("/top-tracks")) {
+            return "top-tracks";
+        } else if (path.equals("/v1/artists")) {
+            return "artists";
+        } else if (path.startsWith("/v1/")) {
+            return "other";
+        }
+
+        // images and previews are named after their host
+        return request.url().getHost();
+    }
+
+    /**
+     * Counts the bytes read from a network response body, and adds them to the endpoint's
+     * stats when the body is closed
+     */
+    private static class CountingSource extends ForwardingSource {
+        private final PerfStats.Endpoint endpoint;
+        private long bytes = 0;
+        private boolean closed = false;
+
+        CountingSource(Source delegate, PerfStats.Endpoint endpoint) {
+            super(delegate);
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                endpoint.recordBytes(bytes);
+            }
+            super.close();
+        }
+    }
+}
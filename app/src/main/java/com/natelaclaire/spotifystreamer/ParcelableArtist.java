@@ -0,0 +1,67 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Parcelable SpotifyArtist, used to hand the artist that was tapped to TopTenTracksActivity
+ */
+public class ParcelableArtist extends SpotifyArtist implements Parcelable {
+
+    /**
+     * Constructor copying another artist
+     * @param artist artist to copy
+     */
+    public ParcelableArtist(SpotifyArtist artist) {
+        super(artist.id, artist.name, artist.getPhotoUrl());
+    }
+
+    /**
+     * Constructor used by CREATOR to recreate object from Parcel
+     * @param parcel Parcel object containing the values to restore
+     */
+    public ParcelableArtist(Parcel parcel) {
+        // if no photo, Parcel will contain an empty String
+        super(parcel.readString(), parcel.readString(), emptyToNull(parcel.readString()));
+    }
+
+    /**
+     * Not used
+     * @return
+     */
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    /**
+     * Write field values to Parcel
+     * @param parcel
+     * @param flags
+     */
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        parcel.writeString(this.id);
+        parcel.writeString(this.name);
+
+        // if artist photo is null, store empty String
+        parcel.writeString(getPhotoUrl() == null ? "" : getPhotoUrl());
+    }
+
+    private static String emptyToNull(String s) {
+        return s == null || s.length() == 0 ? null : s;
+    }
+
+    public static final Parcelable.Creator<ParcelableArtist> CREATOR = new Parcelable.Creator<ParcelableArtist>() {
+        @Override
+        public ParcelableArtist createFromParcel(Parcel parcel) {
+            return new ParcelableArtist(parcel);
+        }
+
+        @Override
+        public ParcelableArtist[] newArray(int i) {
+            return new ParcelableArtist[i];
+        }
+
+    };
+}
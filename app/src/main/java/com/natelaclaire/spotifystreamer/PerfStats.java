@@ -0,0 +1,341 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.squareup.picasso.StatsSnapshot;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Application-wide performance measurements: latency histograms, per-endpoint HTTP stats
+ * recorded by the MetricsInterceptor, and named counters. Everything is kept in memory for
+ * the session. snapshot() gathers them together with the stats the caches, the scheduler and
+ * the player keep themselves, for the DebugActivity and for export as JSON.
+ * <p>
+ * Also wraps android.os.Trace, so that the sections of search, mapping, binding and image
+ * loading show up in systrace on devices that support it.
+ */
+public final class PerfStats {
+
+    private static final String LOG_TAG = PerfStats.class.getSimpleName();
+
+    // names of the latency histograms
+    public static final String SEARCH_TO_ROWS = "search to rows";
+    public static final String SEARCH_LOAD = "search load";
+    public static final String TRACKS_LOAD = "top tracks load";
+    public static final String QUEUE_WAIT = "queue wait";
+
+    // names of the counters
+    public static final String REQUESTS_CANCELLED = "requests cancelled";
+
+    private static final double[] PERCENTILES = { 50, 95, 99 };
+
+    private static final Map<String, LatencyHistogram> histograms = new TreeMap<String, LatencyHistogram>();
+    private static final Map<String, Endpoint> endpoints = new TreeMap<String, Endpoint>();
+    private static final Map<String, Long> counters = new TreeMap<String, Long>();
+
+    // when the stats were last reset, for working out rates
+    private static long since = SystemClock.elapsedRealtime();
+
+    private PerfStats() {
+    }
+
+    /**
+     * Record a latency in a named histogram, creating it on first use
+     * @param name name of the histogram, e.g. SEARCH_TO_ROWS
+     * @param millis latency in milliseconds
+     */
+    public static void record(String name, long millis) {
+        LatencyHistogram histogram;
+
+        synchronized (histograms) {
+            histogram = histograms.get(name);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                histograms.put(name, histogram);
+            }
+        }
+
+        histogram.record(millis);
+    }
+
+    /**
+     * Add one to a named counter
+     * @param name name of the counter, e.g. REQUESTS_CANCELLED
+     */
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Add to a named counter
+     * @param name name of the counter
+     * @param amount amount to add
+     */
+    public static void add(String name, long amount) {
+        synchronized (counters) {
+            Long count = counters.get(name);
+            counters.put(name, count == null ? amount : count + amount);
+        }
+    }
+
+    /**
+     * Stats of an HTTP endpoint, creating them on first use
+     * @param name endpoint name, e.g. "api search"
+     * @return the endpoint's stats
+     */
+    static Endpoint endpoint(String name) {
+        synchronized (endpoints) {
+            Endpoint endpoint = endpoints.get(name);
+            if (endpoint == null) {
+                endpoint = new Endpoint();
+                endpoints.put(name, endpoint);
+            }
+            return endpoint;
+        }
+    }
+
+    /**
+     * Start a systrace section on the current thread; does nothing before API 18
+     * @param name name of the section
+     */
+    public static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * End the systrace section most recently started on the current thread
+     */
+    public static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Forget everything recorded so far. The stats kept by the caches and the scheduler
+     * themselves are not reset.
+     */
+    public static void reset() {
+        synchronized (histograms) {
+            histograms.clear();
+        }
+        synchronized (endpoints) {
+            endpoints.clear();
+        }
+        synchronized (counters) {
+            counters.clear();
+        }
+        since = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Gather everything measured so far, including the stats the caches, scheduler, player
+     * and image loader keep themselves
+     * @param context any Context
+     * @return snapshot as JSON
+     */
+    public static JSONObject snapshot(Context context) {
+        JSONObject json = new JSONObject();
+
+        try {
+            json.put("device", Build.MANUFACTURER + " " + Build.MODEL + ", API " + Build.VERSION.SDK_INT);
+            json.put("seconds", (SystemClock.elapsedRealtime() - since) / 1000);
+
+            JSONObject latencies = new JSONObject();
+            synchronized (histograms) {
+                for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                    latencies.put(entry.getKey(), toJson(entry.getValue()));
+                }
+            }
+            json.put("latencies", latencies);
+
+            JSONObject http = new JSONObject();
+            synchronized (endpoints) {
+                for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+                    http.put(entry.getKey(), entry.getValue().toJson());
+                }
+            }
+            json.put("http", http);
+
+            JSONObject counts = new JSONObject();
+            synchronized (counters) {
+                for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                    counts.put(entry.getKey(), entry.getValue());
+                }
+            }
+            json.put("counters", counts);
+
+            json.put("caches", cachesToJson(context));
+            json.put("scheduler", schedulerToJson(context));
+            json.put("player", playerToJson());
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Unable to build snapshot", e);
+        }
+
+        return json;
+    }
+
+    private static JSONObject cachesToJson(Context context) throws JSONException {
+        JSONObject caches = new JSONObject();
+
+        MemoryCache memoryCache = MemoryCache.getInstance(context);
+        caches.put("memory hits", memoryCache.getHitCount());
+        caches.put("memory misses", memoryCache.getMissCount());
+
+        SpotifyClient client = SpotifyClient.getInstance(context);
+        caches.put("http hits", client.getCacheHitCount());
+        caches.put("http misses", client.getCacheMissCount());
+
+        StatsSnapshot images = ImageLoader.getInstance(context).getPicasso().getSnapshot();
+        caches.put("image hits", images.cacheHits);
+        caches.put("image misses", images.cacheMisses);
+        caches.put("image memory bytes", images.size);
+        caches.put("image downloads", images.downloadCount);
+        caches.put("image downloaded bytes", images.totalDownloadSize);
+        caches.put("image average decoded bytes", images.averageOriginalBitmapSize);
+        caches.put("image selections", ImageSelector.getSelectionCount());
+        caches.put("image bytes saved by selection", ImageSelector.getBytesSaved());
+
+        PreviewCache previewCache = PreviewCache.getInstance(context);
+        caches.put("preview hits", previewCache.getHitCount());
+        caches.put("preview misses", previewCache.getMissCount());
+        caches.put("preview hit ratio", previewCache.getHitRatio());
+        caches.put("preview evictions", previewCache.getEvictionCount());
+        caches.put("preview bytes", previewCache.getSize());
+
+        ArtistHydrator hydrator = ArtistHydrator.getInstance(context);
+        caches.put("hydrator requests", hydrator.getRequestCount());
+        caches.put("hydrator artists", hydrator.getHydratedCount());
+
+        return caches;
+    }
+
+    private static JSONObject schedulerToJson(Context context) throws JSONException {
+        JSONObject scheduler = new JSONObject();
+        RequestScheduler requestScheduler = RequestScheduler.getInstance(context);
+
+        scheduler.put("queue depth", requestScheduler.getQueueDepth());
+        scheduler.put("coalesced", requestScheduler.getCoalescedCount());
+
+        String[] lanes = { "search", "tracks", "prefetch" };
+        int[] priorities = {
+                RequestScheduler.PRIORITY_SEARCH, RequestScheduler.PRIORITY_TRACKS, RequestScheduler.PRIORITY_PREFETCH
+        };
+        for (int i = 0; i < lanes.length; i++) {
+            JSONObject lane = new JSONObject();
+            lane.put("average wait ms", requestScheduler.getAverageWaitMillis(priorities[i]));
+            lane.put("max wait ms", requestScheduler.getMaxWaitMillis(priorities[i]));
+            scheduler.put(lanes[i], lane);
+        }
+
+        return scheduler;
+    }
+
+    private static JSONObject playerToJson() throws JSONException {
+        JSONObject player = new JSONObject();
+
+        player.put("previews started", PreviewPlayerService.getFirstAudioCount());
+        player.put("average first audio ms", PreviewPlayerService.getAverageFirstAudioMillis());
+        player.put("last first audio ms", PreviewPlayerService.getLastFirstAudioMillis());
+        player.put("prepared ahead", PreviewPlayerService.getPreparedAheadCount());
+
+        return player;
+    }
+
+    private static JSONObject toJson(LatencyHistogram histogram) throws JSONException {
+        JSONObject json = new JSONObject();
+
+        json.put("count", histogram.getCount());
+        json.put("mean", histogram.getMean());
+        for (double percentile : PERCENTILES) {
+            json.put("p" + (int) percentile, histogram.getPercentile(percentile));
+        }
+        json.put("max", histogram.getMax());
+
+        // bucket counts, keyed by their upper bounds in milliseconds
+        JSONObject buckets = new JSONObject();
+        long[] bounds = LatencyHistogram.getBounds();
+        long[] counts = histogram.getCounts();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                buckets.put(i < bounds.length ? "<=" + bounds[i] : ">" + bounds[bounds.length - 1], counts[i]);
+            }
+        }
+        json.put("buckets", buckets);
+
+        return json;
+    }
+
+    /**
+     * Stats of one HTTP endpoint: latency until the response headers, body bytes received
+     * from the network, and how the response cache answered
+     */
+    static class Endpoint {
+        final LatencyHistogram latency = new LatencyHistogram();
+        private long bytes = 0;
+        private long cacheHits = 0;
+        private long conditionalHits = 0;
+        private long networkResponses = 0;
+        private long errors = 0;
+        private long retries = 0;
+
+        /**
+         * Record a completed call
+         * @param millis time until the response headers arrived
+         * @param fromCache true if the cache answered, directly or after a 304 from the network
+         * @param fromNetwork true if the network was asked
+         * @param attempts network attempts the call took, including retries and redirects
+         */
+        synchronized void recordCall(long millis, boolean fromCache, boolean fromNetwork, int attempts) {
+            latency.record(millis);
+
+            if (fromCache && fromNetwork) {
+                conditionalHits++;
+            } else if (fromCache) {
+                cacheHits++;
+            } else {
+                networkResponses++;
+            }
+
+            if (attempts > 1) {
+                retries += attempts - 1;
+            }
+        }
+
+        /**
+         * Record the body bytes read from the network for a call, once its body is closed
+         * @param networkBytes bytes as they came over the wire, before any gzip decoding
+         */
+        synchronized void recordBytes(long networkBytes) {
+            bytes += networkBytes;
+        }
+
+        synchronized void recordError() {
+            errors++;
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            JSONObject json = PerfStats.toJson(latency);
+
+            json.put("bytes", bytes);
+            json.put("cache hits", cacheHits);
+            json.put("conditional hits", conditionalHits);
+            json.put("network", networkResponses);
+            json.put("errors", errors);
+            json.put("retries", retries);
+
+            return json;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used disk cache for the preview clips, keyed by preview URL, so that
+ * a clip is only downloaded once. Complete clips are stored under the MD5 of their URL; a clip
+ * is written to a partial file while it downloads and only becomes visible once complete.
+ * <p>
+ * The access order is kept in memory and in the files' modification times, so it survives
+ * restarts. Counts hits, misses and evictions for the session.
+ */
+public class PreviewCache {
+
+    private static final String LOG_TAG = PreviewCache.class.getSimpleName();
+
+    private static final String CACHE_DIR = "previews";
+    private static final long MAX_SIZE = 50 * 1024 * 1024;
+
+    private static final String COMPLETE_SUFFIX = ".mp3";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private static PreviewCache instance;
+
+    private final File directory;
+    private final long maxSize;
+
+    // sizes of the complete clips by key, in access order
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size = 0;
+
+    // keys of the clips being downloaded
+    private final HashSet<String> downloading = new HashSet<String>();
+
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    /**
+     * Returns the shared cache, creating it on first use
+     * @param context any Context
+     * @return the shared PreviewCache
+     */
+    public static synchronized PreviewCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new PreviewCache(new File(context.getCacheDir(), CACHE_DIR), MAX_SIZE);
+        }
+        return instance;
+    }
+
+    private PreviewCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create " + directory);
+        }
+
+        load();
+    }
+
+    /**
+     * Look up a complete clip, marking it as recently used. A hit is counted; a miss is only
+     * counted when the caller goes on to download the clip, through recordMiss(), so that
+     * range requests passed through to the network don't count against the hit ratio.
+     * @param url preview URL
+     * @return the cached file, or null if the clip isn't cached
+     */
+    public synchronized File get(String url) {
+        String key = key(url);
+        Long length = files.get(key);
+        File file = new File(directory, key + COMPLETE_SUFFIX);
+
+        if (length != null && !file.exists()) {
+            // removed from under us, e.g. by clearing the app's cache
+            files.remove(key);
+            size -= length;
+            length = null;
+        }
+
+        if (length == null) {
+            return null;
+        }
+
+        hitCount++;
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Start downloading a clip
+     * @param url preview URL
+     * @return partial file to write the clip to, or null if it is already being downloaded
+     */
+    public synchronized File startDownload(String url) {
+        String key = key(url);
+
+        if (!downloading.add(key)) {
+            return null;
+        }
+        return new File(directory, key + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * Add a completely downloaded clip to the cache, evicting the least recently used clips
+     * if the cache is over its size
+     * @param url preview URL
+     * @param partial the partial file returned by startDownload()
+     */
+    public synchronized void commit(String url, File partial) {
+        String key = key(url);
+        File file = new File(directory, key + COMPLETE_SUFFIX);
+
+        downloading.remove(key);
+
+        if (!partial.renameTo(file)) {
+            Log.e(LOG_TAG, "Unable to store " + file);
+            partial.delete();
+            return;
+        }
+
+        Long previous = files.put(key, file.length());
+        if (previous != null) {
+            size -= previous;
+        }
+        size += file.length();
+
+        trim();
+    }
+
+    /**
+     * Give up on a download that failed or was incomplete
+     * @param url preview URL
+     * @param partial the partial file returned by startDownload()
+     */
+    public synchronized void abort(String url, File partial) {
+        downloading.remove(key(url));
+        partial.delete();
+    }
+
+    /**
+     * Count a clip that wasn't cached and has to be downloaded
+     */
+    public synchronized void recordMiss() {
+        missCount++;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Share of lookups that found their clip cached
+     * @return hit ratio from 0 to 1, or 0 before any lookup
+     */
+    public synchronized float getHitRatio() {
+        int lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (float) hitCount / lookups;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Size of the complete clips in the cache
+     * @return size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Read the clips already on disk, least recently used first, and remove partial files
+     * left behind by downloads that died with the process
+     */
+    private void load() {
+        File[] found = directory.listFiles();
+        if (found == null) {
+            return;
+        }
+
+        Arrays.sort(found, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+
+        for (File file : found) {
+            String name = file.getName();
+
+            if (name.endsWith(COMPLETE_SUFFIX)) {
+                files.put(name.substring(0, name.length() - COMPLETE_SUFFIX.length()), file.length());
+                size += file.length();
+            } else {
+                file.delete();
+            }
+        }
+
+        trim();
+    }
+
+    /**
+     * Evict the least recently used clips until the cache fits its size
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+
+            size -= eldest.getValue();
+            new File(directory, eldest.getKey() + COMPLETE_SUFFIX).delete();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * File name for a preview URL
+     * @param url preview URL
+     * @return hex MD5 of the URL
+     */
+    private static String key(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
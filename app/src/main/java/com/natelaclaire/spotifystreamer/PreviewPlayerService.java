@@ -0,0 +1,507 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Bound service that plays the 30 second track previews of a list of tracks, the queue.
+ * <p>
+ * Preparing a MediaPlayer for a remote URL buffers the start of the clip, which is most of the
+ * wait after a tap. So a few players are kept prepared ahead of time: for the top of the list
+ * as soon as it loads, and for the tracks after the one playing. Tapping a prepared track
+ * starts it at once, and the next track is handed to setNextMediaPlayer() so that it follows
+ * without a gap when the current one ends.
+ * <p>
+ * The service starts itself while playing, so playback carries on while the screen that bound
+ * it is recreated, and stops itself when the queue runs out. Time to first audio after a tap,
+ * measured up to MediaPlayer.start(), is kept for the session.
+ * <p>
+ * The players stream through the PreviewProxy, so each clip is downloaded once and played
+ * from the PreviewCache after that.
+ */
+public class PreviewPlayerService extends Service implements AudioManager.OnAudioFocusChangeListener {
+
+    private static final String LOG_TAG = PreviewPlayerService.class.getSimpleName();
+
+    // players kept prepared: the one playing, or the top of the list, and the ones after it
+    private static final int PREPARED_PLAYERS = 3;
+
+    // time to first audio after a tap, for the session
+    private static long firstAudioCount;
+    private static long firstAudioTotalMillis;
+    private static long lastFirstAudioMillis;
+    private static long preparedAheadCount;
+
+    private final IBinder binder = new LocalBinder();
+
+    // preview URLs of the tracks being shown, null where a track has no preview
+    private final ArrayList<String> queue = new ArrayList<String>();
+
+    // prepared and preparing players, by preview URL
+    private final HashMap<String, Player> players = new HashMap<String, Player>();
+
+    private Player current;
+    private int currentIndex = -1;
+
+    private AudioManager audioManager;
+    private boolean pausedForFocus = false;
+
+    private PreviewProxy proxy;
+
+    /**
+     * Gives the bound Activity the service itself, since it always runs in the same process
+     */
+    public class LocalBinder extends Binder {
+        PreviewPlayerService getService() {
+            return PreviewPlayerService.this;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        proxy = PreviewProxy.getInstance(this);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Nothing is going to play the prebuffered previews once the screen is gone
+     * @param intent
+     * @return false, onRebind() isn't needed
+     */
+    @Override
+    public boolean onUnbind(Intent intent) {
+        if (current == null) {
+            releaseAll();
+        }
+        return false;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // only started to outlive the binding while playing; don't come back after being killed
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        releaseAll();
+        audioManager.abandonAudioFocus(this);
+
+        super.onDestroy();
+    }
+
+    /**
+     * Set the previews of the tracks being shown and start preparing the first few of them
+     * @param previewUrls preview URL of each track, in list order, null for no preview
+     */
+    public void setQueue(List<String> previewUrls) {
+        if (queue.equals(previewUrls)) {
+            return;
+        }
+
+        queue.clear();
+        queue.addAll(previewUrls);
+
+        // a preview still playing from another list doesn't continue into this one
+        currentIndex = current == null ? -1 : queue.indexOf(current.url);
+        unlinkNext();
+
+        prepareAhead();
+    }
+
+    /**
+     * Play a track's preview, stopping the one that is playing
+     * @param index position of the track in the queue
+     * @return false if the track has no preview or audio focus was refused
+     */
+    public boolean play(int index) {
+        if (index < 0 || index >= queue.size() || queue.get(index) == null) {
+            return false;
+        }
+
+        if (audioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN)
+                != AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+            return false;
+        }
+
+        if (!playIndex(index)) {
+            return false;
+        }
+
+        current.requestedAt = SystemClock.elapsedRealtime();
+        current.wasPreparedAhead = current.prepared;
+        if (current.prepared) {
+            start(current);
+        }
+
+        // keep playing while the bound Activity is recreated
+        startService(new Intent(this, PreviewPlayerService.class));
+
+        return true;
+    }
+
+    /**
+     * Whether a track's preview is playing, or about to
+     * @param index position of the track in the queue
+     * @return true if the track is the current one
+     */
+    public boolean isPlaying(int index) {
+        return current != null && index == currentIndex;
+    }
+
+    /**
+     * Stop playback, keeping the players prepared ahead for the top of the list
+     */
+    public void stop() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+        currentIndex = -1;
+        pausedForFocus = false;
+
+        audioManager.abandonAudioFocus(this);
+        prepareAhead();
+
+        stopSelf();
+    }
+
+    /**
+     * Pause for transient losses of audio focus, such as a notification sound, and stop when
+     * another app takes it over
+     * @param focusChange kind of change
+     */
+    @Override
+    public void onAudioFocusChange(int focusChange) {
+        if (current == null) {
+            return;
+        }
+
+        switch (focusChange) {
+            case AudioManager.AUDIOFOCUS_GAIN:
+                if (pausedForFocus && current.prepared) {
+                    current.mediaPlayer.start();
+                }
+                pausedForFocus = false;
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+                if (current.prepared && current.mediaPlayer.isPlaying()) {
+                    current.mediaPlayer.pause();
+                    pausedForFocus = true;
+                }
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS:
+                stop();
+                break;
+        }
+    }
+
+    /**
+     * Number of taps that have started playback this session
+     * @return count of time to first audio measurements
+     */
+    public static synchronized long getFirstAudioCount() {
+        return firstAudioCount;
+    }
+
+    /**
+     * Average time from a tap to the start of playback
+     * @return average in ms, or 0 if nothing has played
+     */
+    public static synchronized long getAverageFirstAudioMillis() {
+        return firstAudioCount == 0 ? 0 : firstAudioTotalMillis / firstAudioCount;
+    }
+
+    /**
+     * Time from the last tap to the start of playback
+     * @return time in ms, or 0 if nothing has played
+     */
+    public static synchronized long getLastFirstAudioMillis() {
+        return lastFirstAudioMillis;
+    }
+
+    /**
+     * Number of taps that found their preview already prepared
+     * @return count of taps served by a prepared player
+     */
+    public static synchronized long getPreparedAheadCount() {
+        return preparedAheadCount;
+    }
+
+    private static synchronized void recordFirstAudio(long millis, boolean preparedAhead) {
+        firstAudioCount++;
+        firstAudioTotalMillis += millis;
+        lastFirstAudioMillis = millis;
+        if (preparedAhead) {
+            preparedAheadCount++;
+        }
+    }
+
+    /**
+     * Make a track the current one, stopping the one that was playing
+     * @param index position of the track in the queue
+     * @return false if no player could be created for the preview
+     */
+    private boolean playIndex(int index) {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+
+        Player player = obtain(queue.get(index));
+        if (player == null) {
+            currentIndex = -1;
+            return false;
+        }
+
+        current = player;
+        currentIndex = index;
+        pausedForFocus = false;
+
+        prepareAhead();
+        return true;
+    }
+
+    /**
+     * Start the current player once it is prepared
+     * @param player the current player
+     */
+    private void start(Player player) {
+        player.mediaPlayer.start();
+        proxy.markPlayed(player.url);
+
+        if (player.requestedAt != 0) {
+            long millis = SystemClock.elapsedRealtime() - player.requestedAt;
+            player.requestedAt = 0;
+            recordFirstAudio(millis, player.wasPreparedAhead);
+
+            Log.d(LOG_TAG, "Time to first audio " + millis + " ms"
+                    + (player.wasPreparedAhead ? ", prepared ahead" : ""));
+        }
+
+        linkNext();
+    }
+
+    /**
+     * Move on to the next preview when one ends; if it was linked, it is already playing
+     * @param player the player that finished
+     */
+    private void onCompletion(Player player) {
+        if (player != current) {
+            return;
+        }
+
+        Player next = player.next;
+        int nextIndex = nextIndex();
+
+        player.release();
+        current = null;
+
+        if (next != null) {
+            // the linked player has already taken over playback
+            current = next;
+            currentIndex = nextIndex;
+            proxy.markPlayed(next.url);
+            prepareAhead();
+        } else if (nextIndex >= 0 && playIndex(nextIndex)) {
+            if (current.prepared) {
+                start(current);
+            }
+        } else {
+            stop();
+        }
+    }
+
+    /**
+     * Position of the next track with a preview after the current one
+     * @return index in the queue, or -1 if there is none
+     */
+    private int nextIndex() {
+        if (currentIndex < 0) {
+            return -1;
+        }
+
+        for (int i = currentIndex + 1; i < queue.size(); i++) {
+            if (queue.get(i) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Prepare players for the current track and the ones after it, or for the top of the list
+     * if nothing is playing, and release the rest
+     */
+    private void prepareAhead() {
+        ArrayList<String> wanted = new ArrayList<String>(PREPARED_PLAYERS);
+
+        for (int i = Math.max(currentIndex, 0); i < queue.size() && wanted.size() < PREPARED_PLAYERS; i++) {
+            if (queue.get(i) != null) {
+                wanted.add(queue.get(i));
+            }
+        }
+
+        for (Player player : new ArrayList<Player>(players.values())) {
+            if (player != current && !wanted.contains(player.url)) {
+                player.release();
+            }
+        }
+
+        for (String url : wanted) {
+            obtain(url);
+        }
+
+        linkNext();
+    }
+
+    /**
+     * Hand the next track's player to the current one, once both are prepared, so that it
+     * starts as soon as the current preview ends
+     */
+    private void linkNext() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                || current == null || !current.prepared || current.next != null) {
+            return;
+        }
+
+        int nextIndex = nextIndex();
+        Player next = nextIndex < 0 ? null : players.get(queue.get(nextIndex));
+
+        if (next != null && next != current && next.prepared) {
+            current.mediaPlayer.setNextMediaPlayer(next.mediaPlayer);
+            current.next = next;
+        }
+    }
+
+    private void unlinkNext() {
+        if (current != null && current.next != null) {
+            current.next = null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                current.mediaPlayer.setNextMediaPlayer(null);
+            }
+        }
+    }
+
+    /**
+     * Find the player for a preview, or create one and start preparing it
+     * @param url preview URL
+     * @return the player, or null if the URL can't be played
+     */
+    private Player obtain(String url) {
+        Player player = players.get(url);
+
+        if (player == null) {
+            try {
+                player = new Player(url);
+                players.put(url, player);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to play " + url, e);
+                return null;
+            }
+        }
+
+        return player;
+    }
+
+    private void releaseAll() {
+        for (Player player : new ArrayList<Player>(players.values())) {
+            player.release();
+        }
+        current = null;
+        currentIndex = -1;
+    }
+
+    /**
+     * A MediaPlayer for one preview, prepared as soon as it is created
+     */
+    private class Player implements MediaPlayer.OnPreparedListener,
+            MediaPlayer.OnCompletionListener, MediaPlayer.OnErrorListener {
+
+        final String url;
+        final MediaPlayer mediaPlayer = new MediaPlayer();
+        boolean prepared = false;
+
+        // player linked to start when this one completes
+        Player next;
+
+        // elapsedRealtime() of the tap waiting for this player, or 0
+        long requestedAt = 0;
+        boolean wasPreparedAhead = false;
+
+        Player(String url) throws IOException {
+            this.url = url;
+
+            mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            mediaPlayer.setOnPreparedListener(this);
+            mediaPlayer.setOnCompletionListener(this);
+            mediaPlayer.setOnErrorListener(this);
+
+            try {
+                mediaPlayer.setDataSource(proxy.getProxyUrl(url));
+            } catch (IOException e) {
+                mediaPlayer.release();
+                throw e;
+            }
+            mediaPlayer.prepareAsync();
+        }
+
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            prepared = true;
+
+            if (this == current && requestedAt != 0) {
+                start(this);
+            } else {
+                linkNext();
+            }
+        }
+
+        @Override
+        public void onCompletion(MediaPlayer mp) {
+            PreviewPlayerService.this.onCompletion(this);
+        }
+
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            Log.e(LOG_TAG, "Error " + what + "/" + extra + " playing " + url);
+
+            if (this == current) {
+                stop();
+            } else {
+                release();
+            }
+            return true;
+        }
+
+        void release() {
+            if (current != null && current.next == this) {
+                unlinkNext();
+            }
+
+            players.remove(url);
+            mediaPlayer.release();
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP server on the loopback interface that MediaPlayer streams the previews from,
+ * so that they go through the PreviewCache. A cached clip is served from disk through a
+ * FileChannel, honouring byte ranges. A clip that isn't cached is downloaded and written to
+ * the cache while it is passed on to the player. If the player lets go early, the download
+ * only carries on for a clip that has been played, or on an unmetered network, so that the
+ * players prepared ahead don't pull whole clips the user never listens to over mobile data.
+ * A request for a range of a clip that isn't cached yet is passed through to the network.
+ * <p>
+ * Any app on the device can connect to the loopback interface, so the proxy only answers
+ * paths carrying a token that is made up afresh in every process, and only fetches previews
+ * from the preview host; anything else gets a 403.
+ */
+public class PreviewProxy {
+
+    private static final String LOG_TAG = PreviewProxy.class.getSimpleName();
+
+    private static final String PATH = "/preview/";
+    private static final String QUERY = "?url=";
+
+    // length in bytes of the random token in the proxy's paths
+    private static final int TOKEN_BYTES = 16;
+
+    private static final int CONNECT_TIMEOUT_SECONDS = 15;
+    private static final int READ_TIMEOUT_SECONDS = 20;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // "bytes=first-" or "bytes=first-last"
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    // the host Spotify serves previews from
+    static final String PREVIEW_HOST = "p.scdn.co";
+
+    private static PreviewProxy instance;
+
+    // the only host previews are fetched from; tests point this at a local stand-in server
+    private static String previewHost = PREVIEW_HOST;
+
+    private final Context context;
+    private final OkHttpClient httpClient;
+    private final ExecutorService executor;
+    private final String token;
+
+    // preview URLs the user has actually listened to this session
+    private final Set<String> played = Collections.synchronizedSet(new HashSet<String>());
+    private ServerSocket serverSocket;
+
+    /**
+     * Returns the shared proxy, starting it on first use
+     * @param context any Context
+     * @return the shared PreviewProxy
+     */
+    public static synchronized PreviewProxy getInstance(Context context) {
+        if (instance == null) {
+            instance = new PreviewProxy(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Fetch previews from another host, such as a local stand-in used by tests
+     * @param host host name of the preview server
+     */
+    static synchronized void setPreviewHost(String host) {
+        previewHost = host;
+    }
+
+    private static synchronized String getPreviewHost() {
+        return previewHost;
+    }
+
+    private PreviewProxy(Context context) {
+        this.context = context;
+
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(tokenBytes);
+        StringBuilder hex = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : tokenBytes) {
+            hex.append(String.format(Locale.US, "%02x", b & 0xff));
+        }
+        token = hex.toString();
+
+        // clips go to the PreviewCache, not the HTTP cache of the API client
+        httpClient = new OkHttpClient();
+        httpClient.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        httpClient.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        MetricsInterceptor metrics = new MetricsInterceptor("preview");
+        httpClient.interceptors().add(metrics);
+        httpClient.networkInterceptors().add(metrics.getNetworkInterceptor());
+
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "PreviewProxy #" + count.getAndIncrement());
+            }
+        });
+
+        try {
+            serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to start the preview proxy", e);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    /**
+     * Close the server socket, which ends the accept loop, and stop the serving threads, for
+     * tests that replace the shared proxy
+     */
+    void close() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to close the preview proxy", e);
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * URL to give MediaPlayer for a preview
+     * @param url preview URL
+     * @return URL of the preview on the proxy, or the preview URL itself if the proxy
+     * couldn't be started
+     */
+    public String getProxyUrl(String url) {
+        if (serverSocket == null) {
+            return url;
+        }
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + PATH + token + QUERY + Uri.encode(url);
+    }
+
+    /**
+     * Note that a clip has started playing, so that its download is finished even if the
+     * player lets go of it early
+     * @param url preview URL
+     */
+    public void markPlayed(String url) {
+        played.add(url);
+    }
+
+    private void accept() {
+        while (true) {
+            final Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    Log.e(LOG_TAG, "Preview proxy stopped", e);
+                }
+                return;
+            }
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // the player went away, or the download failed
+                        Log.d(LOG_TAG, "Preview request ended: " + e.getMessage());
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // nothing left to do with it
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Answer one request from MediaPlayer
+     * @param socket connection from the player
+     * @throws IOException if the connection or the download fails
+     */
+    private void serve(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+
+        String requestLine = readLine(in);
+        String range = null;
+
+        for (String header = readLine(in); header != null && header.length() > 0; header = readLine(in)) {
+            if (header.toLowerCase(Locale.US).startsWith("range:")) {
+                range = header.substring("range:".length()).trim();
+            }
+        }
+
+        String[] parts = requestLine == null ? new String[0] : requestLine.split(" ");
+        if (parts.length < 2 || !parts[0].equals("GET")) {
+            writeHead(out, 400, "Bad Request", -1, null, null);
+            return;
+        }
+
+        // only URLs handed out by getProxyUrl(), for previews on the preview host
+        String prefix = PATH + token + QUERY;
+        String url = parts[1].startsWith(prefix) ? Uri.decode(parts[1].substring(prefix.length())) : null;
+        if (url == null || !isPreviewUrl(url)) {
+            writeHead(out, 403, "Forbidden", -1, null, null);
+            return;
+        }
+        long first = 0;
+        long last = -1;
+
+        if (range != null) {
+            Matcher matcher = RANGE.matcher(range);
+            if (matcher.matches()) {
+                first = Long.parseLong(matcher.group(1));
+                if (matcher.group(2).length() > 0) {
+                    last = Long.parseLong(matcher.group(2));
+                }
+            } else {
+                range = null;
+            }
+        }
+
+        PreviewCache cache = PreviewCache.getInstance(context);
+        File cached = cache.get(url);
+
+        if (cached != null) {
+            serveFile(out, cached, range != null, first, last);
+        } else if (first > 0) {
+            relay(out, url, range);
+        } else {
+            cache.recordMiss();
+            download(out, cache, url);
+        }
+    }
+
+    /**
+     * Whether a URL is an http(s) URL on the preview host
+     * @param url URL asked for
+     * @return true if the proxy may fetch it
+     */
+    private static boolean isPreviewUrl(String url) {
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+
+        return ("http".equals(scheme) || "https".equals(scheme))
+                && getPreviewHost().equalsIgnoreCase(uri.getHost());
+    }
+
+    /**
+     * Send a cached clip, or the requested range of it, straight from the file
+     */
+    private void serveFile(OutputStream out, File file, boolean ranged, long first, long last) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+
+            if (last < 0 || last >= length) {
+                last = length - 1;
+            }
+            if (first >= length) {
+                writeHead(out, 416, "Requested Range Not Satisfiable", -1, "bytes */" + length, null);
+                return;
+            }
+
+            if (ranged) {
+                writeHead(out, 206, "Partial Content", last - first + 1,
+                        "bytes " + first + "-" + last + "/" + length, "audio/mpeg");
+            } else {
+                writeHead(out, 200, "OK", length, null, "audio/mpeg");
+            }
+
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = first;
+            long remaining = last - first + 1;
+
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Download a whole clip into the cache while passing it on to the player
+     */
+    private void download(OutputStream out, PreviewCache cache, String url) throws IOException {
+        Response response = httpClient.newCall(new Request.Builder().url(url).build()).execute();
+
+        if (!response.isSuccessful()) {
+            response.body().close();
+            writeHead(out, response.code(), response.message(), -1, null, null);
+            return;
+        }
+
+        long length = response.body().contentLength();
+        writeHead(out, 200, "OK", length, null, response.header("Content-Type", "audio/mpeg"));
+
+        // null if another request is already downloading this clip
+        File partial = cache.startDownload(url);
+        FileOutputStream file = null;
+        boolean complete = false;
+        InputStream body = response.body().byteStream();
+
+        try {
+            if (partial != null) {
+                file = new FileOutputStream(partial);
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            boolean playerGone = false;
+            long received = 0;
+            int count;
+
+            while ((count = body.read(buffer)) != -1) {
+                received += count;
+
+                if (file != null) {
+                    file.write(buffer, 0, count);
+                }
+
+                if (!playerGone) {
+                    try {
+                        out.write(buffer, 0, count);
+                    } catch (IOException e) {
+                        playerGone = true;
+
+                        // keep downloading into the cache without the player only if the clip
+                        // was listened to or the data is free; otherwise it was a player
+                        // prepared ahead that has been released
+                        if (!played.contains(url) && !TrackPrefetcher.isUnmetered(context)) {
+                            break;
+                        }
+                    }
+                }
+
+                if (playerGone && file == null) {
+                    break;
+                }
+            }
+
+            complete = count == -1 && (length < 0 || received == length);
+            if (!playerGone) {
+                out.flush();
+            }
+        } finally {
+            body.close();
+
+            if (file != null) {
+                file.close();
+            }
+            if (partial != null) {
+                if (complete) {
+                    cache.commit(url, partial);
+                } else {
+                    cache.abort(url, partial);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pass a range request for a clip that isn't cached through to the network
+     */
+    private void relay(OutputStream out, String url, String range) throws IOException {
+        Response response = httpClient.newCall(new Request.Builder()
+                .url(url)
+                .header("Range", range)
+                .build()).execute();
+
+        InputStream body = response.body().byteStream();
+
+        try {
+            writeHead(out, response.code(), response.message(), response.body().contentLength(),
+                    response.header("Content-Range"), response.header("Content-Type", "audio/mpeg"));
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = body.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            out.flush();
+        } finally {
+            body.close();
+        }
+    }
+
+    private static void writeHead(OutputStream out, int code, String message, long length,
+                                  String contentRange, String contentType) throws IOException {
+        StringBuilder head = new StringBuilder();
+
+        head.append("HTTP/1.1 ").append(code).append(' ').append(message).append("\r\n");
+        head.append("Accept-Ranges: bytes\r\n");
+        head.append("Connection: close\r\n");
+        if (length >= 0) {
+            head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        if (contentRange != null) {
+            head.append("Content-Range: ").append(contentRange).append("\r\n");
+        }
+        if (contentType != null) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        head.append("\r\n");
+
+        out.write(head.toString().getBytes("US-ASCII"));
+    }
+
+    /**
+     * Read a line of the request head, without its line ending
+     * @param in stream from the player
+     * @return the line, or null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,182 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Headless fragment that is retained across configuration changes and runs SpotifyRequests on
+ * behalf of a UI fragment. Requests keep running through a rotation, identical requests are
+ * only run once, and finished requests are delivered to whichever fragment instance is current
+ * (or held until one attaches). The holder can also retain data, such as the lists shown by
+ * the UI fragment, so that it doesn't have to go through a Bundle on rotation.
+ */
+public class RequestHolderFragment extends Fragment {
+
+    /**
+     * Implemented by the UI fragment that receives finished requests
+     */
+    public interface Callbacks {
+        /**
+         * Called on the main thread when a request has finished
+         * @param request the finished request; getResult() is null if it failed
+         */
+        void onRequestFinished(SpotifyRequest<?> request);
+    }
+
+    private Callbacks callbacks;
+
+    // application Context, for getting hold of the scheduler
+    private Context context;
+
+    // requests in flight, by key
+    private final HashMap<String, SpotifyRequest<?>> running = new HashMap<String, SpotifyRequest<?>>();
+
+    // finished requests waiting for a fragment to deliver them to
+    private final ArrayList<SpotifyRequest<?>> undelivered = new ArrayList<SpotifyRequest<?>>();
+
+    private final HashMap<String, Object> retained = new HashMap<String, Object>();
+
+    /**
+     * Find the Activity's holder with the given tag, adding it if there isn't one yet
+     * @param activity Activity the UI fragment belongs to
+     * @param tag tag identifying the holder
+     * @return the RequestHolderFragment
+     */
+    public static RequestHolderFragment get(FragmentActivity activity, String tag) {
+        RequestHolderFragment holder =
+                (RequestHolderFragment) activity.getSupportFragmentManager().findFragmentByTag(tag);
+
+        if (holder == null) {
+            holder = new RequestHolderFragment();
+            activity.getSupportFragmentManager().beginTransaction().add(holder, tag).commit();
+        }
+
+        // the transaction that adds the holder runs later, so requests can't wait for it to
+        // be attached to get hold of the scheduler; the scheduler itself, and the API client
+        // behind it, are only created when the first request is made, to keep them out of
+        // the Activity's start-up
+        if (holder.context == null) {
+            holder.context = activity.getApplicationContext();
+        }
+
+        return holder;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        setRetainInstance(true);
+    }
+
+    /**
+     * Cancel everything that is still running when the Activity is finally going away
+     */
+    @Override
+    public void onDestroy() {
+        for (String key : new ArrayList<String>(running.keySet())) {
+            cancel(key);
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Set the fragment to deliver finished requests to, delivering any that finished while
+     * there was none
+     * @param callbacks current UI fragment, or null when it goes away
+     */
+    public void setCallbacks(Callbacks callbacks) {
+        this.callbacks = callbacks;
+
+        if (callbacks != null && !undelivered.isEmpty()) {
+            ArrayList<SpotifyRequest<?>> finished = new ArrayList<SpotifyRequest<?>>(undelivered);
+            undelivered.clear();
+
+            for (SpotifyRequest<?> request : finished) {
+                callbacks.onRequestFinished(request);
+            }
+        }
+    }
+
+    /**
+     * Schedule a request in its priority lane, unless this holder already has an identical one
+     * in flight; one with the same key from elsewhere in the app is joined rather than repeated
+     * @param request request to run
+     * @return true if the request was scheduled, false if an identical one is in flight
+     */
+    public boolean execute(SpotifyRequest<?> request) {
+        if (running.containsKey(request.getKey())) {
+            return false;
+        }
+
+        running.put(request.getKey(), request);
+        RequestScheduler.getInstance(context).submit(request, request.getPriority(), listener);
+
+        return true;
+    }
+
+    /**
+     * Whether a request with the given key is in flight
+     * @param key request key
+     * @return true if running
+     */
+    public boolean isRunning(String key) {
+        return running.containsKey(key);
+    }
+
+    /**
+     * Cancel the request with the given key; it will not be delivered. Its HTTP call is
+     * aborted unless another holder is waiting for the same request.
+     * @param key request key
+     */
+    public void cancel(String key) {
+        SpotifyRequest<?> request = running.remove(key);
+
+        if (request != null) {
+            RequestScheduler.getInstance(context).cancel(request, listener);
+        }
+    }
+
+    /**
+     * Keep a value across configuration changes
+     * @param name name of the value
+     * @param value value to keep
+     */
+    public void putRetained(String name, Object value) {
+        retained.put(name, value);
+    }
+
+    /**
+     * Get a value kept with putRetained()
+     * @param name name of the value
+     * @return the value, or null if there is none
+     */
+    public Object getRetained(String name) {
+        return retained.get(name);
+    }
+
+    /**
+     * Receives finished requests from the scheduler, on the main thread
+     */
+    private final RequestScheduler.Listener listener = new RequestScheduler.Listener() {
+        @Override
+        public void onRequestFinished(SpotifyRequest<?> request) {
+            // a cancelled or replaced request is not delivered
+            if (running.get(request.getKey()) != request) {
+                return;
+            }
+            running.remove(request.getKey());
+
+            if (callbacks != null) {
+                callbacks.onRequestFinished(request);
+            } else {
+                undelivered.add(request);
+            }
+        }
+    };
+}
@@ -0,0 +1,308 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kaaes.spotify.webapi.android.SpotifyError;
+import retrofit.RetrofitError;
+
+/**
+ * Runs SpotifyRequests on a small, dedicated thread pool. Waiting requests are taken in
+ * priority order, so a user's search never queues behind top tracks or prefetching. Requests
+ * with the same key that are queued or running at the same time are coalesced into a single
+ * API call whose result is handed to every one of them. Queue depth and wait times are kept
+ * per priority lane.
+ */
+public class RequestScheduler {
+
+    private static final String LOG_TAG = RequestScheduler.class.getSimpleName();
+
+    // priority lanes, most urgent first
+    public static final int PRIORITY_SEARCH = 0;
+    public static final int PRIORITY_TRACKS = 1;
+    public static final int PRIORITY_PREFETCH = 2;
+    private static final int LANES = 3;
+
+    private static final int THREADS = 3;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Receives finished requests on the main thread
+     */
+    public interface Listener {
+        /**
+         * Called when a request has finished
+         * @param request the finished request; getResult() is null if it failed
+         */
+        void onRequestFinished(SpotifyRequest<?> request);
+    }
+
+    private static RequestScheduler instance;
+
+    private final SpotifyClient client;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // queued and running jobs, by request key
+    private final HashMap<String, Job> jobs = new HashMap<String, Job>();
+
+    private final AtomicInteger jobSequence = new AtomicInteger();
+
+    // metrics, per lane
+    private final int[] started = new int[LANES];
+    private final long[] totalWaitMillis = new long[LANES];
+    private final long[] maxWaitMillis = new long[LANES];
+    private int coalesced;
+
+    /**
+     * Returns the shared scheduler, creating it on first use
+     * @param context any Context
+     * @return the shared RequestScheduler
+     */
+    public static synchronized RequestScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new RequestScheduler(SpotifyClient.getInstance(context));
+        }
+        return instance;
+    }
+
+    private RequestScheduler(SpotifyClient client) {
+        this.client = client;
+
+        // the pool has a fixed size, so jobs wait in the priority queue rather than in
+        // additional threads
+        executor = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "SpotifyRequest #" + count.getAndIncrement());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stop the request threads, dropping any queued jobs without calling their listeners,
+     * for tests that replace the shared scheduler
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue a request, or join an identical one that is already queued or running
+     * @param request request to run
+     * @param priority one of the PRIORITY_ constants
+     * @param listener receives the request when it has finished
+     */
+    public synchronized void submit(SpotifyRequest<?> request, int priority, Listener listener) {
+        Job job = jobs.get(request.getKey());
+
+        if (job != null) {
+            coalesced++;
+            job.waiters.add(new Waiter(request, listener));
+
+            // a more urgent caller moves a waiting job up the queue
+            if (priority < job.priority && executor.getQueue().remove(job)) {
+                job.priority = priority;
+                executor.execute(job);
+            }
+            return;
+        }
+
+        job = new Job(request, priority);
+        job.waiters.add(new Waiter(request, listener));
+        jobs.put(request.getKey(), job);
+
+        executor.execute(job);
+    }
+
+    /**
+     * Stop waiting for a request. The API call itself is cancelled once nobody is waiting for it.
+     * @param request request passed to submit()
+     * @param listener listener passed to submit()
+     */
+    public synchronized void cancel(SpotifyRequest<?> request, Listener listener) {
+        Job job = jobs.get(request.getKey());
+        if (job == null) {
+            return;
+        }
+
+        for (int i = job.waiters.size() - 1; i >= 0; i--) {
+            Waiter waiter = job.waiters.get(i);
+            if (waiter.request == request && waiter.listener == listener) {
+                job.waiters.remove(i);
+            }
+        }
+
+        if (job.waiters.isEmpty()) {
+            jobs.remove(request.getKey());
+            job.cancelled = true;
+            PerfStats.increment(PerfStats.REQUESTS_CANCELLED);
+
+            // if it hasn't started, just take it out of the queue; otherwise abort the HTTP call
+            if (!executor.getQueue().remove(job)) {
+                client.cancel(job);
+            }
+        }
+    }
+
+    /**
+     * Number of requests waiting for a thread
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Number of requests that were coalesced into one already in flight
+     * @return coalesced request count
+     */
+    public synchronized int getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * Average time requests in a lane spent queued before starting
+     * @param priority one of the PRIORITY_ constants
+     * @return average wait in milliseconds
+     */
+    public synchronized long getAverageWaitMillis(int priority) {
+        return started[priority] == 0 ? 0 : totalWaitMillis[priority] / started[priority];
+    }
+
+    /**
+     * Longest time a request in a lane spent queued before starting
+     * @param priority one of the PRIORITY_ constants
+     * @return maximum wait in milliseconds
+     */
+    public synchronized long getMaxWaitMillis(int priority) {
+        return maxWaitMillis[priority];
+    }
+
+    private synchronized void recordStart(Job job) {
+        long wait = SystemClock.elapsedRealtime() - job.queuedAt;
+
+        started[job.priority]++;
+        totalWaitMillis[job.priority] += wait;
+        maxWaitMillis[job.priority] = Math.max(maxWaitMillis[job.priority], wait);
+        PerfStats.record(PerfStats.QUEUE_WAIT, wait);
+    }
+
+    /**
+     * Hand the result to everyone waiting for the job, on the main thread
+     */
+    private void deliver(final Job job) {
+        final ArrayList<Waiter> waiters;
+
+        synchronized (this) {
+            if (jobs.get(job.primary.getKey()) == job) {
+                jobs.remove(job.primary.getKey());
+            }
+            if (job.cancelled) {
+                return;
+            }
+            waiters = new ArrayList<Waiter>(job.waiters);
+        }
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Waiter waiter : waiters) {
+                    if (waiter.request != job.primary) {
+                        waiter.request.takeResultFrom(job.primary);
+                    }
+                    waiter.listener.onRequestFinished(waiter.request);
+                }
+            }
+        });
+    }
+
+    /**
+     * A request submitted by a listener
+     */
+    private static class Waiter {
+        final SpotifyRequest<?> request;
+        final Listener listener;
+
+        Waiter(SpotifyRequest<?> request, Listener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * One API call, shared by every waiter with the same request key
+     */
+    private class Job implements Runnable, Comparable<Job> {
+        final SpotifyRequest<?> primary;
+        final ArrayList<Waiter> waiters = new ArrayList<Waiter>();
+        final long queuedAt = SystemClock.elapsedRealtime();
+        final int sequence = jobSequence.getAndIncrement();
+        int priority;
+        volatile boolean cancelled;
+
+        Job(SpotifyRequest<?> primary, int priority) {
+            this.primary = primary;
+            this.priority = priority;
+        }
+
+        /**
+         * Jobs are ordered by priority, then first come, first served
+         */
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            recordStart(this);
+
+            // tag the HTTP calls with the job so that cancel() can abort them
+            client.tagCalls(this);
+
+            try {
+                primary.run(client.getService());
+            } catch (RetrofitError error) {
+                // a cancelled call fails with an I/O error, which isn't worth reporting
+                if (!cancelled) {
+                    SpotifyError spotifyError = SpotifyError.fromRetrofitError(error);
+                    Log.e(LOG_TAG, "Error ", spotifyError);
+                }
+            } finally {
+                client.tagCalls(null);
+            }
+
+            deliver(this);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kaaes.spotify.webapi.android.SpotifyApi;
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Tracks;
+import retrofit.RestAdapter;
+import retrofit.android.MainThreadExecutor;
+import retrofit.converter.GsonConverter;
+
+/**
+ * Application-wide holder for the Spotify Web API client. SpotifyApi builds a new RestAdapter
+ * and OkHttp client every time it is constructed, so instead we build a single RestAdapter on
+ * top of one shared OkHttpClient. Every request made through getService() shares the same
+ * connection pool (and therefore keep-alive connections, TLS sessions and HTTP/2 streams), and
+ * the same disk-backed response cache.
+ */
+public class SpotifyClient {
+
+    private static final String LOG_TAG = SpotifyClient.class.getSimpleName();
+
+    // response cache location (inside the app's cache dir) and maximum size
+    private static final String HTTP_CACHE_DIR = "spotify-http";
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    // number of idle connections to keep around, and how long to keep them
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_DURATION_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long READ_TIMEOUT_SECONDS = 20;
+
+    // size of the thread pool shared by OkHttp, Retrofit and the fetch tasks
+    private static final int NETWORK_THREADS = 4;
+
+    private static SpotifyClient instance;
+
+    // where API requests are sent; tests point this at a local stand-in server
+    private static String endpoint = SpotifyApi.SPOTIFY_WEB_API_ENDPOINT;
+
+    private final OkHttpClient httpClient;
+    private final Gson gson;
+    private final ExecutorService networkExecutor;
+    private final SpotifyService service;
+
+    /**
+     * Returns the shared client, creating it on first use
+     * @param context any Context; only the application Context is retained
+     * @return the shared SpotifyClient
+     */
+    public static synchronized SpotifyClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new SpotifyClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Send API requests to another server, such as a local stand-in used by tests. Only
+     * clients created afterwards use it.
+     * @param url base URL of the API, without a trailing slash
+     */
+    static synchronized void setEndpoint(String url) {
+        endpoint = url;
+    }
+
+    private SpotifyClient(Context context) {
+        networkExecutor = new ThreadPoolExecutor(
+                NETWORK_THREADS, NETWORK_THREADS,
+                KEEP_ALIVE_DURATION_MS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NetworkThreadFactory());
+        ((ThreadPoolExecutor) networkExecutor).allowCoreThreadTimeOut(true);
+
+        httpClient = new OkHttpClient();
+        httpClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+
+        // prefer HTTP/2 when the server offers it through ALPN, falling back to HTTP/1.1
+        httpClient.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        httpClient.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        httpClient.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        httpClient.setDispatcher(new Dispatcher(networkExecutor));
+
+        // responses are cached on disk, with per-endpoint lifetimes decided by the interceptor
+        try {
+            httpClient.setCache(new Cache(new File(context.getCacheDir(), HTTP_CACHE_DIR), HTTP_CACHE_SIZE));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to create HTTP cache", e);
+        }
+        httpClient.networkInterceptors().add(new CachePolicyInterceptor());
+
+        // latency, bytes and cache status per endpoint, for the debug screen
+        MetricsInterceptor metrics = new MetricsInterceptor("api");
+        httpClient.interceptors().add(metrics);
+        httpClient.networkInterceptors().add(metrics.getNetworkInterceptor());
+
+        gson = SlimJson.create();
+
+        RestAdapter restAdapter = new RestAdapter.Builder()
+                .setEndpoint(endpoint)
+                .setClient(new TaggingOkClient(httpClient))
+                .setExecutors(networkExecutor, new MainThreadExecutor())
+                // responses are read straight into the few fields the app uses
+                .setConverter(new GsonConverter(gson))
+                .build();
+
+        service = restAdapter.create(SpotifyService.class);
+    }
+
+    /**
+     * Do the one-off work the first request would otherwise pay for: Gson builds its reflective
+     * adapters for the response wrappers the first time it meets them, and the API host has
+     * to be looked up. Blocks, so call it from a background thread.
+     */
+    public void warmUp() {
+        gson.fromJson("{\"artists\":{\"items\":[]}}", ArtistsPager.class);
+        gson.fromJson("{\"tracks\":[]}", Tracks.class);
+
+        try {
+            InetAddress.getAllByName(new URL(endpoint).getHost());
+        } catch (IOException e) {
+            // offline; the first request will look the host up again
+            Log.d(LOG_TAG, "Unable to resolve " + endpoint, e);
+        }
+    }
+
+    /**
+     * Getter for the shared SpotifyService
+     * @return SpotifyService backed by the shared OkHttpClient
+     */
+    public SpotifyService getService() {
+        return service;
+    }
+
+    /**
+     * Tag the API calls made from the current thread, so that they can later be cancelled
+     * @param tag tag object, or null to stop tagging
+     */
+    public void tagCalls(Object tag) {
+        TaggingOkClient.setTag(tag);
+    }
+
+    /**
+     * Cancel in-flight and queued calls that were made with the given tag
+     * @param tag tag passed to tagCalls()
+     */
+    public void cancel(Object tag) {
+        httpClient.cancel(tag);
+    }
+
+    /**
+     * Getter for the shared OkHttpClient, for anything else that needs to talk HTTP
+     * @return the shared OkHttpClient
+     */
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Number of requests that were answered by the response cache
+     * @return cache hit count, or 0 if there is no cache
+     */
+    public int getCacheHitCount() {
+        Cache cache = httpClient.getCache();
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    /**
+     * Number of requests that had to go to the network, including conditional requests
+     * @return cache miss count, or 0 if there is no cache
+     */
+    public int getCacheMissCount() {
+        Cache cache = httpClient.getCache();
+        return cache == null ? 0 : cache.getNetworkCount();
+    }
+
+    /**
+     * Executor for small background jobs such as loading the suggestion index; API requests
+     * go through the RequestScheduler instead
+     * @return shared network Executor
+     */
+    public Executor getExecutor() {
+        return networkExecutor;
+    }
+
+    /**
+     * Stop the network threads and close the response cache, for tests that replace the
+     * shared client. The client can't be used afterwards.
+     */
+    void shutdown() {
+        networkExecutor.shutdownNow();
+
+        Cache cache = httpClient.getCache();
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to close HTTP cache", e);
+            }
+        }
+    }
+
+    /**
+     * Names the network threads and runs them at background priority
+     */
+    private static class NetworkThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "SpotifyNetwork #" + count.getAndIncrement());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Creates and upgrades the database behind SpotifyStore.
+ * <p>
+ * artists holds every artist seen, search_results the ordered artist IDs found for each
+ * normalized query, and tracks the top tracks of an artist in a country. Each row records
+ * when it was fetched so that old rows can be pruned.
+ */
+public class SpotifyDbHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "spotify.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_ARTISTS = "artists";
+    static final String TABLE_SEARCH_RESULTS = "search_results";
+    static final String TABLE_TRACKS = "tracks";
+
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_NAME = "name";
+    static final String COLUMN_NORMALIZED_NAME = "normalized_name";
+    static final String COLUMN_PHOTO = "photo";
+    static final String COLUMN_QUERY = "query";
+    static final String COLUMN_POSITION = "position";
+    static final String COLUMN_ARTIST_ID = "artist_id";
+    static final String COLUMN_COUNTRY = "country";
+    static final String COLUMN_ALBUM_NAME = "album_name";
+    static final String COLUMN_IMAGE_SMALL = "image_small";
+    static final String COLUMN_IMAGE_LARGE = "image_large";
+    static final String COLUMN_PREVIEW = "preview";
+    static final String COLUMN_FETCHED_AT = "fetched_at";
+
+    public SpotifyDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // the primary key indexes the artist ID
+        db.execSQL("CREATE TABLE " + TABLE_ARTISTS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_NAME + " TEXT NOT NULL, "
+                + COLUMN_NORMALIZED_NAME + " TEXT NOT NULL, "
+                + COLUMN_PHOTO + " TEXT, "
+                + COLUMN_FETCHED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX artists_normalized_name ON " + TABLE_ARTISTS
+                + " (" + COLUMN_NORMALIZED_NAME + ")");
+        db.execSQL("CREATE INDEX artists_fetched_at ON " + TABLE_ARTISTS
+                + " (" + COLUMN_FETCHED_AT + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_SEARCH_RESULTS + " ("
+                + COLUMN_QUERY + " TEXT NOT NULL, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_ARTIST_ID + " TEXT NOT NULL, "
+                + COLUMN_FETCHED_AT + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_QUERY + ", " + COLUMN_POSITION + "))");
+        db.execSQL("CREATE INDEX search_results_artist_id ON " + TABLE_SEARCH_RESULTS
+                + " (" + COLUMN_ARTIST_ID + ")");
+
+        // lookups by (artist_id, country) use the leading columns of the primary key
+        db.execSQL("CREATE TABLE " + TABLE_TRACKS + " ("
+                + COLUMN_ARTIST_ID + " TEXT NOT NULL, "
+                + COLUMN_COUNTRY + " TEXT NOT NULL, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_NAME + " TEXT NOT NULL, "
+                + COLUMN_ALBUM_NAME + " TEXT, "
+                + COLUMN_IMAGE_SMALL + " TEXT, "
+                + COLUMN_IMAGE_LARGE + " TEXT, "
+                + COLUMN_PREVIEW + " TEXT, "
+                + COLUMN_FETCHED_AT + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_ARTIST_ID + ", " + COLUMN_COUNTRY + ", " + COLUMN_POSITION + "))");
+        db.execSQL("CREATE INDEX tracks_fetched_at ON " + TABLE_TRACKS
+                + " (" + COLUMN_FETCHED_AT + ")");
+    }
+
+    /**
+     * Everything in the database can be fetched again, so an upgrade simply starts over
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTISTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SEARCH_RESULTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRACKS);
+        onCreate(db);
+    }
+}
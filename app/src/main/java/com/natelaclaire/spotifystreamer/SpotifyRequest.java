@@ -0,0 +1,69 @@
+package com.natelaclaire.spotifystreamer;
+
+import kaaes.spotify.webapi.android.SpotifyService;
+
+/**
+ * A single Spotify Web API request, run in the background by the RequestScheduler on behalf of
+ * a RequestHolderFragment. Requests with the same key are considered identical, so only one of
+ * them is ever in flight; the others share its result.
+ * Requests must not hold on to a Fragment or Activity, since they outlive configuration changes.
+ *
+ * @param <T> type of the result
+ */
+public abstract class SpotifyRequest<T> {
+
+    private final String key;
+    private T result;
+
+    /**
+     * Constructor
+     * @param key identifies the request; requests with equal keys fetch the same thing
+     */
+    protected SpotifyRequest(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Priority lane the request is scheduled in; user-visible requests override this
+     * @return one of the RequestScheduler.PRIORITY_ constants
+     */
+    public int getPriority() {
+        return RequestScheduler.PRIORITY_PREFETCH;
+    }
+
+    /**
+     * Getter for the result
+     * @return result of the request, or null if it failed or hasn't finished
+     */
+    public T getResult() {
+        return result;
+    }
+
+    /**
+     * Run the request and keep its result; called on a background thread
+     * @param service shared SpotifyService
+     */
+    final void run(SpotifyService service) {
+        result = load(service);
+    }
+
+    /**
+     * Share the result of an identical request that was run instead of this one
+     * @param other request with the same key
+     */
+    @SuppressWarnings("unchecked")
+    final void takeResultFrom(SpotifyRequest<?> other) {
+        result = (T) other.result;
+    }
+
+    /**
+     * Perform the request; called on a background thread
+     * @param service shared SpotifyService
+     * @return result of the request
+     */
+    protected abstract T load(SpotifyService service);
+}
@@ -0,0 +1,445 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Persistent store for the artists and tracks fetched from the Spotify API, so that the lists
+ * can be shown straight away after a cold start or without a network connection, and then
+ * refreshed. All database work happens in order on a single background thread; results are
+ * delivered on the main thread. Old rows are pruned when the store is first opened.
+ */
+public class SpotifyStore {
+
+    private static final String LOG_TAG = SpotifyStore.class.getSimpleName();
+
+    // rows fetched longer ago than this are pruned
+    private static final long MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    // size cap on each table
+    private static final int MAX_ROWS = 5000;
+
+    // IDs looked up per statement
+    private static final int MAX_PARAMETERS = 500;
+
+    /**
+     * Receives the results of a load on the main thread
+     * @param <T> type of the result
+     */
+    public interface Callback<T> {
+        /**
+         * Called with the loaded rows
+         * @param result loaded rows; empty if nothing was stored
+         */
+        void onLoaded(T result);
+    }
+
+    private static SpotifyStore instance;
+
+    private final SpotifyDbHelper dbHelper;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Returns the shared store, creating it on first use
+     * @param context any Context
+     * @return the shared SpotifyStore
+     */
+    public static synchronized SpotifyStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new SpotifyStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SpotifyStore(Context context) {
+        dbHelper = new SpotifyDbHelper(context);
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "SpotifyStore");
+            }
+        });
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prune(MAX_AGE_MILLIS, MAX_ROWS);
+            }
+        });
+    }
+
+    /**
+     * Finish the queued work, close the database and stop the store's thread, for tests that
+     * replace the shared store
+     */
+    void shutdown() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                dbHelper.close();
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Load the artists stored for a query. If the query itself hasn't been stored, artists
+     * whose names start with it are loaded instead.
+     * @param query search string
+     * @param limit maximum number of artists to load
+     * @param callback receives the artists
+     */
+    public void loadArtists(final String query, final int limit, final Callback<ArrayList<SpotifyArtist>> callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>();
+
+                try {
+                    artists = queryArtists(MemoryCache.normalizeQuery(query), limit);
+                } catch (SQLiteException e) {
+                    Log.e(LOG_TAG, "Error loading artists", e);
+                }
+
+                deliver(callback, artists);
+            }
+        });
+    }
+
+    /**
+     * Load stored artists by ID, e.g. to restore a list that was too big to save in full
+     * @param ids Spotify artist IDs
+     * @param callback receives the artists that were found, in the order of the IDs
+     */
+    public void loadArtistsById(List<String> ids, final Callback<ArrayList<SpotifyArtist>> callback) {
+        final ArrayList<String> copy = new ArrayList<String>(ids);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>(copy.size());
+
+                try {
+                    HashMap<String, SpotifyArtist> found = queryArtistsById(copy);
+
+                    for (String id : copy) {
+                        SpotifyArtist artist = found.get(id);
+                        if (artist != null) {
+                            artists.add(artist);
+                        }
+                    }
+                } catch (SQLiteException e) {
+                    Log.e(LOG_TAG, "Error loading artists", e);
+                }
+
+                deliver(callback, artists);
+            }
+        });
+    }
+
+    /**
+     * Store the artists found for a query, replacing what was stored for it before
+     * @param query search string
+     * @param artists artists found, in order; the list is copied
+     */
+    public void saveArtists(String query, List<SpotifyArtist> artists) {
+        final String normalized = MemoryCache.normalizeQuery(query);
+        final ArrayList<SpotifyArtist> copy = new ArrayList<SpotifyArtist>(artists);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis();
+                SQLiteDatabase db;
+
+                try {
+                    db = dbHelper.getWritableDatabase();
+                } catch (SQLiteException e) {
+                    Log.e(LOG_TAG, "Error opening database", e);
+                    return;
+                }
+
+                // one transaction for the whole list, rather than one per row
+                db.beginTransaction();
+                try {
+                    db.delete(SpotifyDbHelper.TABLE_SEARCH_RESULTS,
+                            SpotifyDbHelper.COLUMN_QUERY + " = ?", new String[] { normalized });
+
+                    ContentValues artistValues = new ContentValues();
+                    ContentValues resultValues = new ContentValues();
+
+                    for (int i = 0; i < copy.size(); i++) {
+                        SpotifyArtist artist = copy.get(i);
+
+                        artistValues.put(SpotifyDbHelper.COLUMN_ID, artist.id);
+                        artistValues.put(SpotifyDbHelper.COLUMN_NAME, artist.name);
+                        artistValues.put(SpotifyDbHelper.COLUMN_NORMALIZED_NAME, MemoryCache.normalizeQuery(artist.name));
+                        artistValues.put(SpotifyDbHelper.COLUMN_PHOTO, artist.getPhotoUrl());
+                        artistValues.put(SpotifyDbHelper.COLUMN_FETCHED_AT, now);
+                        db.insertWithOnConflict(SpotifyDbHelper.TABLE_ARTISTS, null, artistValues,
+                                SQLiteDatabase.CONFLICT_REPLACE);
+
+                        resultValues.put(SpotifyDbHelper.COLUMN_QUERY, normalized);
+                        resultValues.put(SpotifyDbHelper.COLUMN_POSITION, i);
+                        resultValues.put(SpotifyDbHelper.COLUMN_ARTIST_ID, artist.id);
+                        resultValues.put(SpotifyDbHelper.COLUMN_FETCHED_AT, now);
+                        db.insert(SpotifyDbHelper.TABLE_SEARCH_RESULTS, null, resultValues);
+                    }
+
+                    db.setTransactionSuccessful();
+                } catch (SQLiteException e) {
+                    Log.e(LOG_TAG, "Error saving artists", e);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+    }
+
+    /**
+     * Load the top tracks stored for an artist in a country
+     * @param artistId Spotify artist ID
+     * @param country country code
+     * @param callback receives the tracks
+     */
+    public void loadTracks(final String artistId, final String country, final Callback<ArrayList<SpotifyTrack>> callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<SpotifyTrack> tracks = new ArrayList<SpotifyTrack>();
+
+                try {
+                    tracks = queryTracks(artistId, country);
+                } catch (SQLiteException e) {
+                    Log.e(LOG_TAG, "Error loading tracks", e);
+                }
+
+                deliver(callback, tracks);
+            }
+        });
+    }
+
+    /**
+     * Store the top tracks of an artist in a country, replacing what was stored before
+     * @param artistId Spotify artist ID
+     * @param country country code
+     * @param tracks tracks, in order; the list is copied
+     */
+    public void saveTracks(final String artistId, final String country, List<SpotifyTrack> tracks) {
+        final ArrayList<SpotifyTrack> copy = new ArrayList<SpotifyTrack>(tracks);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis();
+                SQLiteDatabase db;
+
+                try {
+                    db = dbHelper.getWritableDatabase();
+                } catch (SQLiteException e) {
+                    Log.e(LOG_TAG, "Error opening database", e);
+                    return;
+                }
+
+                db.beginTransaction();
+                try {
+                    db.delete(SpotifyDbHelper.TABLE_TRACKS,
+                            SpotifyDbHelper.COLUMN_ARTIST_ID + " = ? AND " + SpotifyDbHelper.COLUMN_COUNTRY + " = ?",
+                            new String[] { artistId, country });
+
+                    ContentValues values = new ContentValues();
+
+                    for (int i = 0; i < copy.size(); i++) {
+                        SpotifyTrack track = copy.get(i);
+
+                        values.put(SpotifyDbHelper.COLUMN_ARTIST_ID, artistId);
+                        values.put(SpotifyDbHelper.COLUMN_COUNTRY, country);
+                        values.put(SpotifyDbHelper.COLUMN_POSITION, i);
+                        values.put(SpotifyDbHelper.COLUMN_NAME, track.name);
+                        values.put(SpotifyDbHelper.COLUMN_ALBUM_NAME, track.albumName);
+                        values.put(SpotifyDbHelper.COLUMN_IMAGE_SMALL, track.getAlbumImageSmallUrl());
+                        values.put(SpotifyDbHelper.COLUMN_IMAGE_LARGE, track.getAlbumImageLargeUrl());
+                        values.put(SpotifyDbHelper.COLUMN_PREVIEW, track.getPreviewUrl());
+                        values.put(SpotifyDbHelper.COLUMN_FETCHED_AT, now);
+                        db.insert(SpotifyDbHelper.TABLE_TRACKS, null, values);
+                    }
+
+                    db.setTransactionSuccessful();
+                } catch (SQLiteException e) {
+                    Log.e(LOG_TAG, "Error saving tracks", e);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete rows fetched too long ago, then the oldest rows of any table that is still too
+     * big. Must be called on the store's executor.
+     * @param maxAgeMillis maximum age of a row
+     * @param maxRows maximum number of rows in each table
+     */
+    void prune(long maxAgeMillis, int maxRows) {
+        String[] tables = {
+                SpotifyDbHelper.TABLE_ARTISTS,
+                SpotifyDbHelper.TABLE_SEARCH_RESULTS,
+                SpotifyDbHelper.TABLE_TRACKS
+        };
+        String cutoff = Long.toString(System.currentTimeMillis() - maxAgeMillis);
+
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+            db.beginTransaction();
+            try {
+                int deleted = 0;
+
+                for (String table : tables) {
+                    deleted += db.delete(table, SpotifyDbHelper.COLUMN_FETCHED_AT + " < ?", new String[] { cutoff });
+
+                    // keep only the newest maxRows rows
+                    deleted += db.delete(table, "rowid IN (SELECT rowid FROM " + table
+                            + " ORDER BY " + SpotifyDbHelper.COLUMN_FETCHED_AT + " DESC LIMIT -1 OFFSET ?)",
+                            new String[] { Integer.toString(maxRows) });
+                }
+
+                db.setTransactionSuccessful();
+                Log.d(LOG_TAG, "Pruned " + deleted + " rows");
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Error pruning", e);
+        }
+    }
+
+    private ArrayList<SpotifyArtist> queryArtists(String normalized, int limit) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery("SELECT a." + SpotifyDbHelper.COLUMN_ID + ", a." + SpotifyDbHelper.COLUMN_NAME
+                + ", a." + SpotifyDbHelper.COLUMN_PHOTO
+                + " FROM " + SpotifyDbHelper.TABLE_SEARCH_RESULTS + " r JOIN " + SpotifyDbHelper.TABLE_ARTISTS
+                + " a ON a." + SpotifyDbHelper.COLUMN_ID + " = r." + SpotifyDbHelper.COLUMN_ARTIST_ID
+                + " WHERE r." + SpotifyDbHelper.COLUMN_QUERY + " = ?"
+                + " ORDER BY r." + SpotifyDbHelper.COLUMN_POSITION + " LIMIT " + limit,
+                new String[] { normalized });
+
+        // a query that was never searched for falls back to a range scan of the name index
+        if (cursor.getCount() == 0) {
+            cursor.close();
+            cursor = db.query(SpotifyDbHelper.TABLE_ARTISTS,
+                    new String[] { SpotifyDbHelper.COLUMN_ID, SpotifyDbHelper.COLUMN_NAME, SpotifyDbHelper.COLUMN_PHOTO },
+                    SpotifyDbHelper.COLUMN_NORMALIZED_NAME + " >= ? AND " + SpotifyDbHelper.COLUMN_NORMALIZED_NAME + " < ?",
+                    new String[] { normalized, normalized + '\uffff' },
+                    null, null, SpotifyDbHelper.COLUMN_NORMALIZED_NAME, Integer.toString(limit));
+        }
+
+        try {
+            ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>(cursor.getCount());
+
+            while (cursor.moveToNext()) {
+                artists.add(new SpotifyArtist(cursor.getString(0), cursor.getString(1), cursor.getString(2)));
+            }
+
+            return artists;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private HashMap<String, SpotifyArtist> queryArtistsById(List<String> ids) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        HashMap<String, SpotifyArtist> found = new HashMap<String, SpotifyArtist>(ids.size());
+
+        // SQLite allows at most 999 parameters in a statement
+        for (int start = 0; start < ids.size(); start += MAX_PARAMETERS) {
+            List<String> chunk = ids.subList(start, Math.min(start + MAX_PARAMETERS, ids.size()));
+
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ",?");
+            }
+
+            Cursor cursor = db.query(SpotifyDbHelper.TABLE_ARTISTS,
+                    new String[] { SpotifyDbHelper.COLUMN_ID, SpotifyDbHelper.COLUMN_NAME, SpotifyDbHelper.COLUMN_PHOTO },
+                    SpotifyDbHelper.COLUMN_ID + " IN (" + placeholders + ")",
+                    chunk.toArray(new String[chunk.size()]),
+                    null, null, null);
+
+            try {
+                while (cursor.moveToNext()) {
+                    found.put(cursor.getString(0),
+                            new SpotifyArtist(cursor.getString(0), cursor.getString(1), cursor.getString(2)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        return found;
+    }
+
+    private ArrayList<SpotifyTrack> queryTracks(String artistId, String country) {
+        Cursor cursor = dbHelper.getReadableDatabase().query(SpotifyDbHelper.TABLE_TRACKS,
+                new String[] {
+                        SpotifyDbHelper.COLUMN_NAME,
+                        SpotifyDbHelper.COLUMN_ALBUM_NAME,
+                        SpotifyDbHelper.COLUMN_IMAGE_SMALL,
+                        SpotifyDbHelper.COLUMN_IMAGE_LARGE,
+                        SpotifyDbHelper.COLUMN_PREVIEW
+                },
+                SpotifyDbHelper.COLUMN_ARTIST_ID + " = ? AND " + SpotifyDbHelper.COLUMN_COUNTRY + " = ?",
+                new String[] { artistId, country },
+                null, null, SpotifyDbHelper.COLUMN_POSITION);
+
+        try {
+            ArrayList<SpotifyTrack> tracks = new ArrayList<SpotifyTrack>(cursor.getCount());
+
+            while (cursor.moveToNext()) {
+                tracks.add(new SpotifyTrack(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(4)
+                ));
+            }
+
+            return tracks;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private <T> void deliver(final Callback<T> callback, final T result) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onLoaded(result);
+            }
+        });
+    }
+}
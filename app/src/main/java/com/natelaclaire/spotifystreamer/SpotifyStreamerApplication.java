@@ -0,0 +1,192 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Application class that measures start-up and warms up the network and image pipelines.
+ * <p>
+ * Start-up is split into phases, recorded in PerfStats and written to the log under the
+ * "Startup" tag so that scripts/startup-benchmark.sh can read them: process start to the first
+ * frame of the first Activity (cold start), MainActivity being brought back to its first frame
+ * (warm start), the first frame to the main thread going idle (interactive), and the first
+ * search of the process to its rows being shown.
+ * <p>
+ * Nothing expensive is built while the first Activity starts. Once it is interactive, the API
+ * client, scheduler, image loader and caches are created on a background thread, Gson's
+ * adapters are primed and the API, image and preview hosts are looked up, so that the first
+ * search no longer pays for all of that on top of its request.
+ */
+public class SpotifyStreamerApplication extends Application {
+
+    private static final String LOG_TAG = "Startup";
+
+    // names of the start-up phases
+    public static final String COLD_START = "cold start to first frame";
+    public static final String WARM_START = "warm start to first frame";
+    public static final String INTERACTIVE = "first frame to interactive";
+    public static final String FIRST_SEARCH = "first search to rows";
+
+    // Intent extra that turns off the warm-up, for measuring the difference it makes
+    public static final String EXTRA_WARMUP = "warmup";
+
+    // hosts the artist photos and preview clips are served from
+    private static final String[] MEDIA_HOSTS = { "i.scdn.co", "p.scdn.co" };
+
+    // set when the class is loaded, which is as close to the process starting as app code gets
+    private static final long PROCESS_START = SystemClock.elapsedRealtime();
+
+    private static boolean firstFrameShown = false;
+    private static boolean firstSearchShown = false;
+    private static boolean warmedUp = false;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        registerActivityLifecycleCallbacks(new StartupCallbacks());
+    }
+
+    /**
+     * Record the first search of the process; later searches are ignored. Must be called on
+     * the main thread.
+     * @param millis time from the search being started to its rows being shown
+     */
+    public static void onFirstSearchShown(long millis) {
+        if (!firstSearchShown) {
+            firstSearchShown = true;
+            recordPhase(FIRST_SEARCH, millis);
+        }
+    }
+
+    private static void recordPhase(String name, long millis) {
+        PerfStats.record(name, millis);
+        Log.i(LOG_TAG, name + ": " + millis + " ms");
+    }
+
+    /**
+     * Build the shared objects the first search and its rows need, and look up the hosts
+     * they talk to. Runs on its own background thread.
+     */
+    private void warmUp() {
+        final long start = SystemClock.elapsedRealtime();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                PerfStats.beginSection("warm up");
+
+                SpotifyClient.getInstance(SpotifyStreamerApplication.this).warmUp();
+                RequestScheduler.getInstance(SpotifyStreamerApplication.this);
+                ImageLoader.getInstance(SpotifyStreamerApplication.this);
+                MemoryCache.getInstance(SpotifyStreamerApplication.this);
+                SpotifyStore.getInstance(SpotifyStreamerApplication.this);
+                ArtistSuggestions.getInstance(SpotifyStreamerApplication.this);
+
+                for (String host : MEDIA_HOSTS) {
+                    try {
+                        InetAddress.getAllByName(host);
+                    } catch (UnknownHostException e) {
+                        // offline; the first request will look the host up again
+                        Log.d(LOG_TAG, "Unable to resolve " + host);
+                    }
+                }
+
+                PerfStats.endSection();
+                Log.d(LOG_TAG, "Warmed up in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            }
+        }, "Warmup");
+
+        thread.start();
+    }
+
+    /**
+     * Watches Activities for their first frame. The first Activity of the process measures
+     * the cold start; MainActivity coming back after that measures a warm start.
+     */
+    private class StartupCallbacks implements ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            final long createdAt = SystemClock.elapsedRealtime();
+            final boolean cold = !firstFrameShown;
+
+            // a warm start brings MainActivity back from scratch, not after a configuration change
+            if (!cold && (!(activity instanceof MainActivity) || savedInstanceState != null)) {
+                return;
+            }
+            firstFrameShown = true;
+
+            final boolean warmUp = !warmedUp && activity.getIntent().getBooleanExtra(EXTRA_WARMUP, true);
+            warmedUp = true;
+
+            final View decorView = activity.getWindow().getDecorView();
+            decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                    final long firstFrameAt = SystemClock.elapsedRealtime();
+                    if (cold) {
+                        recordPhase(COLD_START, firstFrameAt - PROCESS_START);
+                    } else {
+                        recordPhase(WARM_START, firstFrameAt - createdAt);
+                    }
+
+                    // the main thread goes idle once the first frame is drawn and the start-up
+                    // messages queued behind it have been handled
+                    Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                        @Override
+                        public boolean queueIdle() {
+                            if (cold) {
+                                recordPhase(INTERACTIVE, SystemClock.elapsedRealtime() - firstFrameAt);
+                            }
+                            if (warmUp) {
+                                warmUp();
+                            }
+                            return false;
+                        }
+                    });
+
+                    return true;
+                }
+            });
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.natelaclaire.spotifystreamer;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.BufferedSink;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Retrofit Client that works like retrofit.client.OkClient, except that every OkHttp request
+ * is tagged with whatever tag the calling thread has set through setTag(). Retrofit's
+ * synchronous calls run on the caller's thread, so this lets a task tag its own calls and
+ * lets someone else cancel them with OkHttpClient.cancel(tag).
+ */
+public class TaggingOkClient implements Client {
+
+    private static final ThreadLocal<Object> currentTag = new ThreadLocal<Object>();
+
+    private final OkHttpClient client;
+
+    public TaggingOkClient(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Set the tag to apply to calls made from the current thread
+     * @param tag tag object, or null to stop tagging
+     */
+    public static void setTag(Object tag) {
+        if (tag == null) {
+            currentTag.remove();
+        } else {
+            currentTag.set(tag);
+        }
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        com.squareup.okhttp.Request.Builder builder = new com.squareup.okhttp.Request.Builder()
+                .url(request.getUrl())
+                .method(request.getMethod(), createRequestBody(request.getBody()))
+                .tag(currentTag.get());
+
+        for (Header header : request.getHeaders()) {
+            builder.addHeader(header.getName(), header.getValue() == null ? "" : header.getValue());
+        }
+
+        com.squareup.okhttp.Response response = client.newCall(builder.build()).execute();
+
+        return new Response(response.request().urlString(), response.code(), response.message(),
+                createHeaders(response.headers()), createResponseBody(response.body()));
+    }
+
+    private static RequestBody createRequestBody(final TypedOutput body) {
+        if (body == null) {
+            return null;
+        }
+
+        final MediaType mediaType = MediaType.parse(body.mimeType());
+
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return body.length();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                body.writeTo(sink.outputStream());
+            }
+        };
+    }
+
+    private static TypedInput createResponseBody(final ResponseBody body) {
+        if (body.contentLength() == 0) {
+            return null;
+        }
+
+        return new TypedInput() {
+            @Override
+            public String mimeType() {
+                MediaType mediaType = body.contentType();
+                return mediaType == null ? null : mediaType.toString();
+            }
+
+            @Override
+            public long length() {
+                return body.contentLength();
+            }
+
+            @Override
+            public InputStream in() throws IOException {
+                return body.byteStream();
+            }
+        };
+    }
+
+    private static List<Header> createHeaders(Headers headers) {
+        int size = headers.size();
+        List<Header> headerList = new ArrayList<Header>(size);
+
+        for (int i = 0; i < size; i++) {
+            headerList.add(new Header(headers.name(i), headers.value(i)));
+        }
+
+        return headerList;
+    }
+}
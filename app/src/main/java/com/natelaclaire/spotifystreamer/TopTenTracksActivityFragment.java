@@ -2,10 +2,13 @@ package com.natelaclaire.spotifystreamer;
 
 import android.support.v7.app.ActionBar;
 import android.app.ProgressDialog;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.ActionBarActivity;
@@ -13,43 +16,72 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.Toast;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import kaaes.spotify.webapi.android.SpotifyApi;
-import kaaes.spotify.webapi.android.SpotifyError;
-import kaaes.spotify.webapi.android.SpotifyService;
-import kaaes.spotify.webapi.android.models.Track;
-import kaaes.spotify.webapi.android.models.Tracks;
-import retrofit.RetrofitError;
 
 
 /**
  * Fragment for the Top 10 Tracks activitys
  */
-public class TopTenTracksActivityFragment extends Fragment {
+public class TopTenTracksActivityFragment extends Fragment implements RequestHolderFragment.Callbacks {
 
     private final String LOG_TAG = TopTenTracksActivityFragment.class.getSimpleName();
 
+    // tag of the retained fragment that runs this fragment's requests
+    private static final String REQUEST_HOLDER_TAG = "TopTenTracksActivityFragment.requests";
+
     private TrackAdapter trackAdapter;
     private SpotifyArtist artist;
+    private String country;
+
+    // runs requests and keeps the list of tracks across configuration changes
+    private RequestHolderFragment requestHolder;
+
+    // dialog to show Loading message, and the key of the request it is waiting for
+    private ProgressDialog dialog;
+    private String loadingKey;
+
+    // plays the previews; null while not bound
+    private PreviewPlayerService player;
+
+    private final ServiceConnection playerConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            player = ((PreviewPlayerService.LocalBinder) service).getService();
+
+            // start preparing the top previews of whatever is already shown
+            player.setQueue(getPreviewUrls());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            player = null;
+        }
+    };
 
     public TopTenTracksActivityFragment() {
     }
 
     /**
-     * Store the List of tracks in the Bundle
+     * Store the List of tracks in the Bundle; on a configuration change the list is also kept
+     * by the request holder, but the Bundle is still needed if the process is killed. A list
+     * too big for the Bundle is left out and fetched again, which finds it in the caches.
      * @param outState
      */
     @Override
     public void onSaveInstanceState(Bundle outState) {
-        outState.putParcelableArrayList("tracks", trackAdapter.getTracks());
+        byte[] tracks = CompactListCodec.encodeTracks(trackAdapter.getTracks());
+
+        if (CompactListCodec.fitsInBundle(tracks)) {
+            outState.putByteArray("tracks", tracks);
+        }
+        outState.putString("loadingKey", loadingKey);
         super.onSaveInstanceState(outState);
     }
 
@@ -58,6 +90,8 @@ public class TopTenTracksActivityFragment extends Fragment {
         super.onCreate(savedInstanceState);
 
         setHasOptionsMenu(true);
+
+        requestHolder = RequestHolderFragment.get(getActivity(), REQUEST_HOLDER_TAG);
     }
 
     /**
@@ -74,33 +108,65 @@ public class TopTenTracksActivityFragment extends Fragment {
         View rootView = inflater.inflate(R.layout.fragment_top_ten_tracks, container, false);
         Intent intent = getActivity().getIntent();
 
-        ArrayList<SpotifyTrack> tracks;
+        // after a configuration change the request holder still has the List of tracks
+        @SuppressWarnings("unchecked")
+        ArrayList<SpotifyTrack> tracks = (ArrayList<SpotifyTrack>) requestHolder.getRetained("tracks");
 
-        // if a saved instance state Bundle was supplied and contains a List of tracks,
-        // use it; otherwise, create an empty List
-        if (savedInstanceState == null || !savedInstanceState.containsKey("tracks")) {
-            tracks = new ArrayList<SpotifyTrack>();
-        } else {
-            tracks = savedInstanceState.getParcelableArrayList("tracks");
+        if (savedInstanceState != null) {
+            loadingKey = savedInstanceState.getString("loadingKey");
+        }
+
+        // otherwise, if a saved instance state Bundle was supplied and contains a List of
+        // tracks, use it; failing that, create an empty List, which needs fetching
+        boolean needsFetch = false;
+
+        if (tracks == null) {
+            if (savedInstanceState == null || !savedInstanceState.containsKey("tracks")) {
+                tracks = new ArrayList<SpotifyTrack>();
+                needsFetch = true;
+            } else {
+                tracks = CompactListCodec.decodeTracks(savedInstanceState.getByteArray("tracks"));
+            }
+            requestHolder.putRetained("tracks", tracks);
         }
 
         // instantiate the TrackAdapter
         trackAdapter = new TrackAdapter(
                 getActivity(),
-                tracks
+                tracks,
+                this
         );
 
         ListView lv = (ListView)rootView.findViewById(R.id.track_list);
         lv.setAdapter(trackAdapter);
 
-        // when an item is clicked on, we're currently just showing a Toast,
-        // to be fixed in part 2
+        // don't start image requests for rows that fly past
+        lv.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                ImageLoader.getInstance(getActivity()).onScrollStateChanged(TopTenTracksActivityFragment.this, scrollState);
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            }
+        });
+
+        // when an item is clicked on, play its preview, or stop it if it is already playing
         lv.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
                 SpotifyTrack track = trackAdapter.getItem(position);
 
-                Toast.makeText(getActivity(), track.name, Toast.LENGTH_SHORT).show();
+                if (track.getPreviewUrl() == null) {
+                    Toast.makeText(getActivity(), getString(R.string.no_preview_message), Toast.LENGTH_SHORT).show();
+                } else if (player != null) {
+                    if (player.isPlaying(position)) {
+                        player.stop();
+                    } else if (player.play(position)) {
+                        Toast.makeText(getActivity(), track.name, Toast.LENGTH_SHORT).show();
+                    }
+                }
             }
         });
 
@@ -108,11 +174,19 @@ public class TopTenTracksActivityFragment extends Fragment {
 
             // the intent contains the Spotify artist object, so use the ID to execute the task
             // that queries the Spotify API
-            artist = intent.getParcelableExtra(Intent.EXTRA_TEXT);
+            artist = intent.<ParcelableArtist>getParcelableExtra(Intent.EXTRA_TEXT);
 
             Log.v(LOG_TAG, artist.id);
-            FetchTracksTask task = new FetchTracksTask();
-            task.execute(artist.id);
+
+            // load country from shared preferences
+            SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(getActivity());
+            country = sharedPref.getString(getString(R.string.pref_country_key), getString(R.string.pref_country_default));
+
+            // when recreated, the tracks are already here or still being fetched by the
+            // request holder
+            if (needsFetch) {
+                fetchTracks();
+            }
 
             // use the artist's name as the activity's subtitle
             ActionBar actionBar = ((ActionBarActivity)getActivity()).getSupportActionBar();
@@ -125,93 +199,210 @@ public class TopTenTracksActivityFragment extends Fragment {
     }
 
     /**
-     * AsyncTask to query the Spotify API for artist's top 10 tracks
+     * Start receiving finished requests, including any that finished while the Activity was
+     * being recreated, and bring back the Loading dialog if its request is still running
+     * @param savedInstanceState
      */
-    public class FetchTracksTask extends AsyncTask<String, Void, List<Track>> {
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+
+        requestHolder.setCallbacks(this);
 
-        private final String LOG_TAG = FetchTracksTask.class.getSimpleName();
+        if (loadingKey != null && requestHolder.isRunning(loadingKey)) {
+            showLoading(loadingKey);
+        } else {
+            loadingKey = null;
+        }
+    }
 
-        // dialog to show Loading message
-        private ProgressDialog dialog = new ProgressDialog(getActivity());
+    /**
+     * Bind to the preview player while visible
+     */
+    @Override
+    public void onStart() {
+        super.onStart();
 
-        /**
-         * Before executing the task, display Loading dialog
-         */
-        @Override
-        protected void onPreExecute() {
-            this.dialog.setMessage("Loading...");
-            this.dialog.show();
+        getActivity().bindService(new Intent(getActivity(), PreviewPlayerService.class),
+                playerConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    /**
+     * Unbind from the preview player; a preview that is playing carries on through a
+     * configuration change, but stops when the user leaves the artist
+     */
+    @Override
+    public void onStop() {
+        if (player != null && getActivity().isFinishing()) {
+            player.stop();
         }
 
-        /**
-         * Query the Spotify API for artist's top 10 tracks in the background
-         * @param strings array containing artist's Spotify ID
-         * @return List of found Tracks
-         */
-        @Override
-        protected List<Track> doInBackground(String... strings) {
+        getActivity().unbindService(playerConnection);
+        player = null;
 
-            SpotifyApi api = new SpotifyApi();
-            SpotifyService service = api.getService();
+        super.onStop();
+    }
 
-            // load country from shared preferences
-            SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(getActivity());
-            String country = sharedPref.getString(getString(R.string.pref_country_key), getString(R.string.pref_country_default));
+    /**
+     * Close the Loading dialog when the view goes away; the request carries on in the request
+     * holder and is delivered to the next instance of this fragment
+     */
+    @Override
+    public void onDestroyView() {
+        // the images of this fragment's rows are no longer wanted
+        ImageLoader.getInstance(getActivity()).cancelTag(this);
 
-            try {
-                // getArtistTopTrack method requires the country, which must be supplied through
-                // a Map object
-                Map<String, Object> options = new HashMap();
-                options.put("country", country);
+        if (dialog != null) {
+            dialog.dismiss();
+            dialog = null;
+        }
 
-                // perform query
-                Tracks results = service.getArtistTopTrack(strings[0], options);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onDetach() {
+        requestHolder.setCallbacks(null);
+        super.onDetach();
+    }
+
+    /**
+     * Fetch the artist's top tracks, from the memory cache if possible
+     */
+    private void fetchTracks() {
+        ResultCache.Entry<ArrayList<SpotifyTrack>> cached =
+                MemoryCache.getInstance(getActivity()).getTracks(artist.id, country);
 
-                // return tracks found
-                List<Track> tracks = results.tracks;
+        // tracks seen recently are shown right away
+        if (cached != null) {
+            showTracks(cached.value);
 
-                return tracks;
-            } catch (RetrofitError error) {
-                SpotifyError spotifyError = SpotifyError.fromRetrofitError(error);
-                Log.e(LOG_TAG, "Error ", spotifyError);
+            if (!cached.isStale()) {
+                return;
             }
+        }
 
-            return null;
+        FetchTracksTask task = new FetchTracksTask(artist.id, country, ImageTargets.forDisplay(getActivity()));
+        requestHolder.execute(task);
 
+        // stale tracks are refreshed quietly, without the Loading dialog
+        if (cached == null) {
+            showLoading(task.getKey());
+            showStoredTracks(task.getKey());
         }
+    }
 
-        /**
-         * After the query has run, update the custom array adapter
-         * @param tracks List of found Tracks
-         */
-        @Override
-        protected void onPostExecute(List<Track> tracks) {
-            if (tracks != null) {
-                // remove all previous tracks in the List
-                trackAdapter.clear();
-
-                // loop through found tracks, adding them to the List
-                for (Track t : tracks) {
-                    Log.v(LOG_TAG, t.name);
-                    trackAdapter.add(new SpotifyTrack(
-                            t.name,
-                            t.album,
-                            t.preview_url
-                    ));
+    /**
+     * Show the tracks stored for the artist while they are fetched from the network
+     * @param key key of the network request
+     */
+    private void showStoredTracks(final String key) {
+        SpotifyStore.getInstance(getActivity()).loadTracks(artist.id, country,
+                new SpotifyStore.Callback<ArrayList<SpotifyTrack>>() {
+            @Override
+            public void onLoaded(ArrayList<SpotifyTrack> tracks) {
+                // the network may have been quicker
+                if (!isAdded() || !trackAdapter.isEmpty() || tracks.isEmpty()) {
+                    return;
                 }
 
-                // notify the user if no tracks were found
-                if (tracks.isEmpty()) {
-                    Toast.makeText(getActivity(), getString(R.string.no_tracks_message), Toast.LENGTH_SHORT).show();
+                showTracks(tracks);
+
+                // there is something to look at now, so the refresh carries on quietly
+                if (key.equals(loadingKey)) {
+                    hideLoading();
                 }
             }
+        });
+    }
 
-            // close Loading dialog
-            if (dialog.isShowing()) {
-                dialog.dismiss();
-            }
+    /**
+     * Show a list of tracks and have the preview player prepare the top of it
+     * @param tracks tracks to show
+     */
+    private void showTracks(List<SpotifyTrack> tracks) {
+        trackAdapter.replaceAll(tracks);
+
+        if (player != null) {
+            player.setQueue(getPreviewUrls());
+        }
+    }
+
+    /**
+     * Preview URLs of the tracks shown, in list order
+     * @return List of URLs, with null for tracks that have no preview
+     */
+    private List<String> getPreviewUrls() {
+        List<SpotifyTrack> tracks = trackAdapter.getTracks();
+        ArrayList<String> urls = new ArrayList<String>(tracks.size());
+
+        for (SpotifyTrack track : tracks) {
+            urls.add(track.getPreviewUrl());
+        }
+        return urls;
+    }
+
+    /**
+     * Display the Loading dialog until the given request finishes
+     * @param key key of the request
+     */
+    private void showLoading(String key) {
+        loadingKey = key;
+
+        if (dialog == null) {
+            dialog = new ProgressDialog(getActivity());
+            dialog.setMessage("Loading...");
+        }
+        dialog.show();
+    }
 
-            super.onPostExecute(tracks);
+    /**
+     * Close the Loading dialog
+     */
+    private void hideLoading() {
+        loadingKey = null;
+
+        if (dialog != null && dialog.isShowing()) {
+            dialog.dismiss();
+        }
+    }
+
+    /**
+     * Receive a finished request from the request holder
+     * @param request the finished request
+     */
+    @Override
+    public void onRequestFinished(SpotifyRequest<?> request) {
+        if (request instanceof FetchTracksTask) {
+            onTracksFetched((FetchTracksTask) request);
+        }
+    }
+
+    /**
+     * After the query has run, update the custom array adapter
+     * @param task the finished request
+     */
+    private void onTracksFetched(FetchTracksTask task) {
+        ArrayList<SpotifyTrack> tracks = task.getResult();
+
+        // close Loading dialog
+        if (task.getKey().equals(loadingKey)) {
+            hideLoading();
+        }
+
+        if (tracks != null) {
+            // replace all previous tracks in the List with the tracks found, which were
+            // mapped in the background
+            showTracks(tracks);
+
+            // remember the mapped tracks so that reopening this artist is instant
+            MemoryCache.getInstance(getActivity()).putTracks(task.artistId, task.country, trackAdapter.getTracks());
+            SpotifyStore.getInstance(getActivity()).saveTracks(task.artistId, task.country, trackAdapter.getTracks());
+
+            // notify the user if no tracks were found
+            if (tracks.isEmpty()) {
+                Toast.makeText(getActivity(), getString(R.string.no_tracks_message), Toast.LENGTH_SHORT).show();
+            }
         }
     }
 }
@@ -1,7 +1,6 @@
 package com.natelaclaire.spotifystreamer;
 
 import android.app.Activity;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,29 +8,33 @@ import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * Custom ArrayAdapter for SpotifyTrack objects
  */
 public class TrackAdapter extends ArrayAdapter<SpotifyTrack> {
-    private static final String LOG_TAG = TrackAdapter.class.getSimpleName();
 
     private ArrayList<SpotifyTrack> tracks;
 
+    // tag of the image requests, so that the fragment can pause and cancel them
+    private final Object imageTag;
+
     /**
      * Custom constructor
      *
      * @param context   The current context.
      * @param tracks   A List of Track objects to display in a list.
+     * @param imageTag  Tag for the list's image requests.
      */
-    public TrackAdapter(Activity context, ArrayList<SpotifyTrack> tracks) {
+    public TrackAdapter(Activity context, ArrayList<SpotifyTrack> tracks, Object imageTag) {
         // The second argument is not going to be used in this adapter,
         // so any value is acceptable.
         super(context, 0, tracks);
 
+        this.imageTag = imageTag;
+
         this.tracks = tracks;
     }
 
@@ -44,7 +47,22 @@ public class TrackAdapter extends ArrayAdapter<SpotifyTrack> {
     }
 
     /**
-     * Provides a view for the AdapterView
+     * Replace the whole list, redrawing it once
+     * @param tracks SpotifyTrack objects to show
+     */
+    public void replaceAll(Collection<? extends SpotifyTrack> tracks) {
+        setNotifyOnChange(false);
+        clear();
+        addAll(tracks);
+
+        // also turns notifyOnChange back on
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Provides a view for the AdapterView. Rows keep their child views in a ViewHolder, and a
+     * row that is already showing the track (e.g. after notifyDataSetChanged()) isn't bound
+     * again, so its thumbnail doesn't flash back to the placeholder.
      *
      * @param position      The position that is requesting a view.
      * @param convertView   The recycled view to populate.
@@ -54,28 +72,58 @@ public class TrackAdapter extends ArrayAdapter<SpotifyTrack> {
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         SpotifyTrack track = getItem(position);
-
-        Log.v(LOG_TAG, track.name);
+        ViewHolder holder;
 
         if (convertView == null) {
             convertView = LayoutInflater.from(getContext()).inflate(R.layout.list_item_track, parent, false);
+            holder = new ViewHolder(convertView);
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
         }
 
-        ImageView trackThumbnailView = (ImageView) convertView.findViewById(R.id.track_thumbnail);
-        trackThumbnailView.setImageResource(R.mipmap.track_placeholder);
-
-        // check to see if there is a thumbnail image and load it using Picasso
-        if (track.albumImageSmall!=null) {
-            Picasso.with(getContext()).load(track.albumImageSmall).into(trackThumbnailView);
+        if (holder.track == track) {
+            return convertView;
         }
+        holder.track = track;
+
+        PerfStats.beginSection("bind track row");
+
+        holder.albumNameView.setText(track.albumName);
+        holder.trackNameView.setText(track.name);
 
-        TextView albumNameView = (TextView) convertView.findViewById(R.id.track_album_name);
-        albumNameView.setText(track.albumName);
+        // load the thumbnail, if there is one; otherwise a recycled row may still be loading the
+        // previous track's thumbnail, which has to be cancelled
+        String thumbnailUrl = track.getAlbumImageSmallUrl();
+
+        if (thumbnailUrl == null) {
+            ImageLoader.getInstance(getContext()).cancelRequest(holder.thumbnailView);
+            holder.thumbnailView.setImageResource(R.mipmap.track_placeholder);
+        } else {
+            ImageLoader.getInstance(getContext()).loadThumbnail(thumbnailUrl)
+                    .placeholder(R.mipmap.track_placeholder)
+                    .tag(imageTag)
+                    .into(holder.thumbnailView);
+        }
 
-        TextView trackNameView = (TextView) convertView.findViewById(R.id.track_name);
-        trackNameView.setText(track.name);
+        PerfStats.endSection();
 
         return convertView;
     }
 
+    /**
+     * Child views of a row, and the track the row is showing
+     */
+    private static class ViewHolder {
+        final ImageView thumbnailView;
+        final TextView albumNameView;
+        final TextView trackNameView;
+        SpotifyTrack track;
+
+        ViewHolder(View row) {
+            thumbnailView = (ImageView) row.findViewById(R.id.track_thumbnail);
+            albumNameView = (TextView) row.findViewById(R.id.track_album_name);
+            trackNameView = (TextView) row.findViewById(R.id.track_name);
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Fetches the top tracks of the artists the user is most likely to tap next, in the prefetch
+ * lane, and warms the album thumbnails they will show, so that TopTenTracksActivityFragment
+ * can open straight from the memory cache; the tracks are also written to the SpotifyStore.
+ * Prefetching only happens on unmetered networks. If the user opens an artist while its
+ * prefetch is in flight, the scheduler coalesces the two requests.
+ */
+public class TrackPrefetcher implements RequestScheduler.Listener {
+
+    private final Context context;
+
+    // prefetches in flight, by artist ID
+    private final HashMap<String, FetchTracksTask> inFlight = new HashMap<String, FetchTracksTask>();
+
+    /**
+     * Constructor
+     * @param context any Context; only the application Context is kept
+     */
+    public TrackPrefetcher(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Prefetch the top tracks of the given artists, cancelling prefetches for any other
+     * artists, which have been scrolled away from
+     * @param artists artists the user is likely to tap
+     */
+    public void prefetch(List<SpotifyArtist> artists) {
+        ArrayList<String> wanted = new ArrayList<String>(artists.size());
+        for (SpotifyArtist artist : artists) {
+            wanted.add(artist.id);
+        }
+
+        for (String artistId : new ArrayList<String>(inFlight.keySet())) {
+            if (!wanted.contains(artistId)) {
+                RequestScheduler.getInstance(context).cancel(inFlight.remove(artistId), this);
+            }
+        }
+
+        if (!isUnmetered(context)) {
+            return;
+        }
+
+        String country = getCountry();
+        ImageTargets targets = ImageTargets.forDisplay(context);
+        MemoryCache memoryCache = MemoryCache.getInstance(context);
+
+        for (String artistId : wanted) {
+            if (inFlight.containsKey(artistId)) {
+                continue;
+            }
+
+            // nothing to do if the tracks are already cached and fresh
+            ResultCache.Entry<ArrayList<SpotifyTrack>> cached = memoryCache.getTracks(artistId, country);
+            if (cached != null && !cached.isStale()) {
+                continue;
+            }
+
+            FetchTracksTask task = new FetchTracksTask(artistId, country, targets, true);
+            inFlight.put(artistId, task);
+            RequestScheduler.getInstance(context).submit(task, task.getPriority(), this);
+        }
+    }
+
+    /**
+     * Cancel every prefetch in flight, e.g. when a new search starts
+     */
+    public void cancelAll() {
+        for (FetchTracksTask task : inFlight.values()) {
+            RequestScheduler.getInstance(context).cancel(task, this);
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Cache the prefetched tracks and warm their thumbnails
+     * @param request the finished FetchTracksTask
+     */
+    @Override
+    public void onRequestFinished(SpotifyRequest<?> request) {
+        FetchTracksTask task = (FetchTracksTask) request;
+
+        if (inFlight.get(task.artistId) != task) {
+            return;
+        }
+        inFlight.remove(task.artistId);
+
+        ArrayList<SpotifyTrack> spotifyTracks = task.getResult();
+        if (spotifyTracks == null) {
+            return;
+        }
+
+        MemoryCache.getInstance(context).putTracks(task.artistId, task.country, spotifyTracks);
+        SpotifyStore.getInstance(context).saveTracks(task.artistId, task.country, spotifyTracks);
+
+        // download and decode the thumbnails into the image caches without displaying them
+        for (SpotifyTrack track : spotifyTracks) {
+            if (track.getAlbumImageSmallUrl() != null) {
+                ImageLoader.getInstance(context).loadThumbnail(track.getAlbumImageSmallUrl()).fetch();
+            }
+        }
+    }
+
+    /**
+     * Whether the active network is one that prefetching won't cost the user money on
+     * @param context any Context
+     * @return true if connected to an unmetered network
+     */
+    static boolean isUnmetered(Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+
+        return networkInfo != null && networkInfo.isConnected()
+                && !ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    /**
+     * Country the top tracks are shown for, from shared preferences
+     * @return country code
+     */
+    private String getCountry() {
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
+        return sharedPref.getString(context.getString(R.string.pref_country_key),
+                context.getString(R.string.pref_country_default));
+    }
+}
@@ -0,0 +1,469 @@
+package com.natelaclaire.spotifystreamer;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.Intent;
+import android.net.Uri;
+import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.ListView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowDialog;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+import kaaes.spotify.webapi.android.SpotifyApi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the artist search and top tracks screens against a MockSpotifyBackend and reports,
+ * for each network scenario, the time until the first rows are in the list and the requests
+ * and bytes it took. Run with "gradlew testDebug"; the reports are printed to the test output.
+ *
+ * The main looper is paused and pumped by the test, so that results posted from background
+ * threads are handled on the test thread, as they would be on the main thread of a device.
+ * Times are wall-clock times, and include the JVM's start-up costs in the first test run.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class EndToEndLatencyTest {
+
+    private static final String QUERY = "coldplay";
+
+    // rows in the recorded search response and top tracks response
+    private static final int SEARCH_ROWS = 15;
+    private static final int TRACK_ROWS = 10;
+
+    private static final long TIMEOUT_MS = 15000;
+
+    // how long the backend has to be quiet before a scenario is considered finished
+    private static final long SETTLE_MS = 300;
+
+    // a mid-range phone screen, for laying out the lists so that their rows load images
+    private static final int SCREEN_WIDTH = 720;
+    private static final int SCREEN_HEIGHT = 1280;
+
+    // roughly a good 3G connection
+    private static final int SLOW_LATENCY_MS = 300;
+    private static final int SLOW_BYTES_PER_SECOND = 48 * 1024;
+
+    // classes that keep an application-wide instance, which would carry one test's client,
+    // caches and threads into the next
+    private static final Class<?>[] SINGLETONS = {
+            SpotifyClient.class, RequestScheduler.class, MemoryCache.class, SpotifyStore.class,
+            ArtistSuggestions.class, ArtistHydrator.class, ImageLoader.class, PreviewCache.class,
+            PreviewProxy.class
+    };
+
+    private MockSpotifyBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new MockSpotifyBackend();
+        backend.start();
+
+        resetSingletons();
+        SpotifyClient.setEndpoint(backend.getApiEndpoint());
+        PreviewProxy.setPreviewHost(new URL(backend.getBaseUrl()).getHost());
+
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        backend.shutdown();
+
+        SpotifyClient.setEndpoint(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT);
+        PreviewProxy.setPreviewHost(PreviewProxy.PREVIEW_HOST);
+        resetSingletons();
+    }
+
+    @Test
+    public void searchOnFastNetwork() throws Exception {
+        long firstRowMs = search(startMain(), QUERY, SEARCH_ROWS);
+
+        assertEquals(1, backend.getRequestCount(MockSpotifyBackend.SEARCH));
+        report("search, fast network", firstRowMs);
+    }
+
+    @Test
+    public void searchOnSlowNetwork() throws Exception {
+        backend.setLatency(SLOW_LATENCY_MS);
+        backend.setBandwidth(SLOW_BYTES_PER_SECOND);
+
+        long firstRowMs = search(startMain(), QUERY, SEARCH_ROWS);
+
+        assertTrue(firstRowMs >= SLOW_LATENCY_MS);
+        assertEquals(1, backend.getRequestCount(MockSpotifyBackend.SEARCH));
+        report("search, slow network", firstRowMs);
+    }
+
+    @Test
+    public void searchRepeatedIsAnsweredFromMemory() throws Exception {
+        search(startMain(), QUERY, SEARCH_ROWS);
+        settle();
+
+        int searches = backend.getRequestCount(MockSpotifyBackend.SEARCH);
+        int topTracks = backend.getRequestCount(MockSpotifyBackend.TOP_TRACKS);
+        long firstRowMs = search(startMain(), QUERY, SEARCH_ROWS);
+
+        // the results and the prefetched top tracks are still fresh, so the API isn't asked again
+        assertEquals(searches, backend.getRequestCount(MockSpotifyBackend.SEARCH));
+        assertEquals(topTracks, backend.getRequestCount(MockSpotifyBackend.TOP_TRACKS));
+        report("search, repeated", firstRowMs);
+    }
+
+    @Test
+    public void searchWithServerErrors() throws Exception {
+        backend.failRequests(MockSpotifyBackend.SEARCH, 500);
+
+        Activity activity = startMain();
+        submitSearch(activity, QUERY);
+        waitForRequests(MockSpotifyBackend.SEARCH, 1);
+        settle();
+
+        // no rows, and the Loading dialog doesn't hang around
+        assertEquals(0, list(activity, R.id.artist_list).getAdapter().getCount());
+        Dialog dialog = ShadowDialog.getLatestDialog();
+        assertTrue(dialog == null || !dialog.isShowing());
+        report("search, server errors", -1);
+    }
+
+    @Test
+    public void searchWithDroppedConnections() throws Exception {
+        backend.setDropConnections(true);
+
+        Activity activity = startMain();
+        submitSearch(activity, QUERY);
+        waitForRequests(MockSpotifyBackend.SEARCH, 1);
+        settle();
+
+        assertEquals(0, list(activity, R.id.artist_list).getAdapter().getCount());
+        report("search, dropped connections", -1);
+    }
+
+    @Test
+    public void topTracksOnFastNetwork() throws Exception {
+        long firstRowMs = showTopTracks();
+
+        assertEquals(1, backend.getRequestCount(MockSpotifyBackend.TOP_TRACKS));
+        report("top tracks, fast network", firstRowMs);
+    }
+
+    @Test
+    public void topTracksOnSlowNetwork() throws Exception {
+        backend.setLatency(SLOW_LATENCY_MS);
+        backend.setBandwidth(SLOW_BYTES_PER_SECOND);
+
+        long firstRowMs = showTopTracks();
+
+        assertTrue(firstRowMs >= SLOW_LATENCY_MS);
+        assertEquals(1, backend.getRequestCount(MockSpotifyBackend.TOP_TRACKS));
+        report("top tracks, slow network", firstRowMs);
+    }
+
+    @Test
+    public void previewIsDownloadedOnce() throws Exception {
+        backend.setBandwidth(SLOW_BYTES_PER_SECOND * 4);
+
+        String url = backend.getBaseUrl() + "/preview/0123456789abcdef";
+        PreviewProxy proxy = PreviewProxy.getInstance(RuntimeEnvironment.application);
+
+        // the first play goes through to the backend, and is kept by the PreviewCache
+        long[] first = readThroughProxy(proxy.getProxyUrl(url));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (PreviewCache.getInstance(RuntimeEnvironment.application).get(url) == null) {
+            assertTrue("Preview was not cached", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        // the second is served from the cache
+        long[] second = readThroughProxy(proxy.getProxyUrl(url));
+
+        assertEquals(first[1], second[1]);
+        assertEquals(1, backend.getRequestCount(MockSpotifyBackend.PREVIEW));
+
+        System.out.println(String.format(Locale.US,
+                "[e2e] preview: first audio byte %d ms from the network, %d ms from the cache; %d bytes",
+                first[0], second[0], second[1]));
+        report("preview, played twice", -1);
+    }
+
+    @Test
+    public void proxyOnlyServesPreviewsItHandedOut() throws Exception {
+        String url = backend.getBaseUrl() + "/preview/0123456789abcdef";
+        String proxyUrl = PreviewProxy.getInstance(RuntimeEnvironment.application).getProxyUrl(url);
+        String base = proxyUrl.substring(0, proxyUrl.indexOf("/preview/"));
+
+        // a path without the proxy's token, and a URL on another host
+        assertEquals(403, responseCode(base + "/preview/0000?url=" + Uri.encode(url)));
+        assertEquals(403, responseCode(proxyUrl.substring(0, proxyUrl.indexOf("?url=")) + "?url="
+                + Uri.encode("http://example.com/preview/0123456789abcdef")));
+        assertEquals(0, backend.getRequestCount(MockSpotifyBackend.PREVIEW));
+    }
+
+    /**
+     * Start the artist search screen
+     * @return the Activity
+     */
+    private Activity startMain() {
+        Activity activity = Robolectric.setupActivity(MainActivity.class);
+        ShadowLooper.runUiThreadTasks();
+        return activity;
+    }
+
+    /**
+     * Search as the user would, with the Search key, and wait for the list to fill
+     * @param activity artist search screen
+     * @param query search string
+     * @param rows number of rows expected
+     * @return milliseconds until the first rows were in the list
+     */
+    private long search(Activity activity, String query, int rows) throws InterruptedException {
+        long start = System.nanoTime();
+        submitSearch(activity, query);
+
+        ListView list = list(activity, R.id.artist_list);
+        long firstRowMs = waitForRows(list, start);
+
+        assertEquals(rows, list.getAdapter().getCount());
+        layOut(list);
+        settle();
+
+        return firstRowMs;
+    }
+
+    private void submitSearch(Activity activity, String query) {
+        EditText searchBox = (EditText) activity.findViewById(R.id.artist_search);
+        searchBox.setText(query);
+        searchBox.onEditorAction(EditorInfo.IME_ACTION_SEARCH);
+    }
+
+    /**
+     * Open the top tracks of the first artist found, as tapping the row would, and wait for
+     * the list to fill
+     * @return milliseconds from the Activity starting until the first rows were in the list
+     */
+    private long showTopTracks() throws InterruptedException {
+        SpotifyArtist artist = new SpotifyArtist("Ky9Pf34qY6Nb3wWD25RQ4F", "Coldplay",
+                backend.getBaseUrl() + "/image/artist");
+        Intent intent = new Intent(RuntimeEnvironment.application, TopTenTracksActivity.class)
+                .putExtra(Intent.EXTRA_TEXT, new ParcelableArtist(artist));
+
+        long start = System.nanoTime();
+        Activity activity = Robolectric.buildActivity(TopTenTracksActivity.class)
+                .withIntent(intent).setup().get();
+
+        ListView list = list(activity, R.id.track_list);
+        long firstRowMs = waitForRows(list, start);
+
+        assertEquals(TRACK_ROWS, list.getAdapter().getCount());
+        layOut(list);
+        settle();
+
+        return firstRowMs;
+    }
+
+    private static ListView list(Activity activity, int id) {
+        ListView list = (ListView) activity.findViewById(id);
+        assertNotNull(list);
+        return list;
+    }
+
+    /**
+     * Pump the main looper until the list has rows
+     * @param list list to watch
+     * @param start System.nanoTime() when the user acted
+     * @return milliseconds from start until the first rows were in the list
+     */
+    private static long waitForRows(ListView list, long start) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while (true) {
+            ShadowLooper.runUiThreadTasks();
+            if (list.getAdapter().getCount() > 0) {
+                return (System.nanoTime() - start) / 1000000;
+            }
+
+            assertTrue("No rows after " + TIMEOUT_MS + " ms", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void waitForRequests(int kind, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while (backend.getRequestCount(kind) < count) {
+            ShadowLooper.runUiThreadTasks();
+            assertTrue("Backend got no requests", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Pump the main looper until the backend has had no requests and sent no bytes for
+     * SETTLE_MS, so that the images and prefetches a scenario sets off are counted
+     */
+    private void settle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        long quietSince = System.currentTimeMillis();
+        int requests = backend.getRequestCount();
+        long bytes = backend.getBytes();
+
+        while (System.currentTimeMillis() - quietSince < SETTLE_MS && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasks();
+            Thread.sleep(5);
+
+            if (backend.getRequestCount() != requests || backend.getBytes() != bytes) {
+                requests = backend.getRequestCount();
+                bytes = backend.getBytes();
+                quietSince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Measure and lay out a list at screen size, which binds its visible rows and so starts
+     * their image requests
+     * @param list list to lay out
+     */
+    private static void layOut(ListView list) {
+        list.measure(View.MeasureSpec.makeMeasureSpec(SCREEN_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SCREEN_HEIGHT, View.MeasureSpec.EXACTLY));
+        list.layout(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    /**
+     * Request a URL from the local proxy without reading the body
+     * @param url proxy URL
+     * @return HTTP status code of the response
+     */
+    private static int responseCode(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Read a preview through the local proxy, as the player would
+     * @param url proxy URL
+     * @return milliseconds until the first byte, and the number of bytes read
+     */
+    private static long[] readThroughProxy(String url) throws IOException {
+        long start = System.nanoTime();
+        long firstByteMs = -1;
+        long total = 0;
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            InputStream in = connection.getInputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                if (firstByteMs < 0) {
+                    firstByteMs = (System.nanoTime() - start) / 1000000;
+                }
+                total += count;
+            }
+            in.close();
+        } finally {
+            connection.disconnect();
+        }
+
+        return new long[] { firstByteMs, total };
+    }
+
+    /**
+     * Print what a scenario took
+     * @param scenario name of the scenario
+     * @param firstRowMs time until the first rows were shown, or -1 if there were none
+     */
+    private void report(String scenario, long firstRowMs) {
+        System.out.println(String.format(Locale.US,
+                "[e2e] %-28s first row %6s | requests: %d search, %d top tracks, %d images, %d previews | %,d bytes",
+                scenario + ":",
+                firstRowMs < 0 ? "-" : firstRowMs + " ms",
+                backend.getRequestCount(MockSpotifyBackend.SEARCH),
+                backend.getRequestCount(MockSpotifyBackend.TOP_TRACKS),
+                backend.getRequestCount(MockSpotifyBackend.IMAGE),
+                backend.getRequestCount(MockSpotifyBackend.PREVIEW),
+                backend.getBytes()));
+    }
+
+    /**
+     * Stop the threads and sockets of the application-wide instances and forget them, so that
+     * the next getInstance() builds them again for the current test's Application and backend
+     */
+    private static void resetSingletons() throws Exception {
+        // the scheduler's jobs call the client, so it goes first
+        RequestScheduler scheduler = currentInstance(RequestScheduler.class);
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        SpotifyClient client = currentInstance(SpotifyClient.class);
+        if (client != null) {
+            client.shutdown();
+        }
+        SpotifyStore store = currentInstance(SpotifyStore.class);
+        if (store != null) {
+            store.shutdown();
+        }
+        ArtistSuggestions suggestions = currentInstance(ArtistSuggestions.class);
+        if (suggestions != null) {
+            suggestions.shutdown();
+        }
+        ImageLoader imageLoader = currentInstance(ImageLoader.class);
+        if (imageLoader != null) {
+            imageLoader.shutdown();
+        }
+        PreviewProxy proxy = currentInstance(PreviewProxy.class);
+        if (proxy != null) {
+            proxy.close();
+        }
+
+        for (Class<?> singleton : SINGLETONS) {
+            Field field = singleton.getDeclaredField("instance");
+            field.setAccessible(true);
+
+            synchronized (singleton) {
+                field.set(null, null);
+            }
+        }
+    }
+
+    /**
+     * Read a singleton's instance without creating one
+     * @param singleton class with a static "instance" field
+     * @return the current instance, or null if there is none
+     */
+    private static <T> T currentInstance(Class<T> singleton) throws Exception {
+        Field field = singleton.getDeclaredField("instance");
+        field.setAccessible(true);
+
+        synchronized (singleton) {
+            return singleton.cast(field.get(null));
+        }
+    }
+}
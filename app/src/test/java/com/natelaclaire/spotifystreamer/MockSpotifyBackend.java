@@ -0,0 +1,306 @@
+package com.natelaclaire.spotifystreamer;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Spotify Web API and its image and preview hosts, built on
+ * MockWebServer. It serves recorded searchArtists and top tracks responses from the mock/
+ * test resources, images and preview clips, with configurable latency, bandwidth and
+ * errors, and counts the requests and body bytes it serves by kind.
+ *
+ * The recorded responses refer to images and previews as {{base}}/image/... and
+ * {{base}}/preview/..., which are rewritten to point back at this server.
+ */
+public class MockSpotifyBackend {
+
+    // kinds of requests, for the counters
+    public static final int SEARCH = 0;
+    public static final int TOP_TRACKS = 1;
+    public static final int IMAGE = 2;
+    public static final int PREVIEW = 3;
+    private static final int KINDS = 4;
+
+    // size of the synthetic preview clips, about 30 seconds at 128 kbit/s
+    private static final int PREVIEW_SIZE = 480 * 1024;
+
+    // bandwidth throttling is applied in slices of this length
+    private static final long THROTTLE_PERIOD_MS = 100;
+
+    private final MockWebServer server = new MockWebServer();
+
+    private final byte[] image;
+    private final byte[] preview;
+    private String searchJson;
+    private String topTracksJson;
+
+    private volatile int latencyMs = 0;
+    private volatile int bytesPerSecond = 0;
+    private volatile int errorCode = 0;
+    private volatile int errorKind = -1;
+    private volatile boolean dropConnections = false;
+
+    private final AtomicInteger[] requests = new AtomicInteger[KINDS];
+    private final AtomicLong[] bytes = new AtomicLong[KINDS];
+    private final AtomicInteger unknownRequests = new AtomicInteger();
+
+    public MockSpotifyBackend() throws IOException {
+        for (int i = 0; i < KINDS; i++) {
+            requests[i] = new AtomicInteger();
+            bytes[i] = new AtomicLong();
+        }
+
+        image = readResource("image.png");
+
+        // previews are opaque to everything but the player, so any bytes will do
+        preview = new byte[PREVIEW_SIZE];
+        new Random(PREVIEW_SIZE).nextBytes(preview);
+
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return respond(request);
+            }
+        });
+    }
+
+    /**
+     * Start serving on a free local port
+     * @throws IOException if the server can't be started
+     */
+    public void start() throws IOException {
+        server.play();
+
+        String base = getBaseUrl();
+        searchJson = new String(readResource("search-artists.json"), "UTF-8").replace("{{base}}", base);
+        topTracksJson = new String(readResource("top-tracks.json"), "UTF-8").replace("{{base}}", base);
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Base URL of the server, e.g. for image and preview URLs
+     * @return URL without a trailing slash
+     */
+    public String getBaseUrl() {
+        String url = server.getUrl("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+    /**
+     * Endpoint to hand to SpotifyClient.setEndpoint() in place of the real API
+     * @return API base URL
+     */
+    public String getApiEndpoint() {
+        return getBaseUrl() + "/v1";
+    }
+
+    /**
+     * Delay every response by a round trip's worth of time before its headers are sent
+     * @param latencyMs delay in milliseconds, 0 for none
+     */
+    public void setLatency(int latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * Limit the rate response bodies are sent at
+     * @param bytesPerSecond bytes per second, 0 for no limit
+     */
+    public void setBandwidth(int bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Answer every request of a kind with an HTTP error
+     * @param kind SEARCH, TOP_TRACKS, IMAGE or PREVIEW
+     * @param code HTTP status code, e.g. 500 or 429
+     */
+    public void failRequests(int kind, int code) {
+        errorKind = kind;
+        errorCode = code;
+    }
+
+    /**
+     * Close connections before answering, as a dropped mobile connection would
+     * @param drop true to drop every connection
+     */
+    public void setDropConnections(boolean drop) {
+        dropConnections = drop;
+    }
+
+    /**
+     * Number of requests of a kind received so far
+     * @param kind SEARCH, TOP_TRACKS, IMAGE or PREVIEW
+     * @return request count
+     */
+    public int getRequestCount(int kind) {
+        return requests[kind].get();
+    }
+
+    /**
+     * Number of requests received so far, of every kind
+     * @return request count
+     */
+    public int getRequestCount() {
+        return server.getRequestCount();
+    }
+
+    /**
+     * Number of response body bytes of a kind sent so far
+     * @param kind SEARCH, TOP_TRACKS, IMAGE or PREVIEW
+     * @return body bytes
+     */
+    public long getBytes(int kind) {
+        return bytes[kind].get();
+    }
+
+    /**
+     * Number of response body bytes sent so far, of every kind
+     * @return body bytes
+     */
+    public long getBytes() {
+        long total = 0;
+        for (AtomicLong count : bytes) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    /**
+     * Number of requests for paths that have no recorded response
+     * @return request count
+     */
+    public int getUnknownRequestCount() {
+        return unknownRequests.get();
+    }
+
+    private MockResponse respond(RecordedRequest request) throws InterruptedException {
+        int kind = kindOf(request.getPath());
+
+        if (kind < 0) {
+            unknownRequests.incrementAndGet();
+            return new MockResponse().setResponseCode(404);
+        }
+
+        requests[kind].incrementAndGet();
+
+        // the dispatcher runs on the connection's thread, so sleeping here holds back the headers
+        if (latencyMs > 0) {
+            Thread.sleep(latencyMs);
+        }
+
+        if (dropConnections) {
+            return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+        }
+
+        MockResponse response;
+        if (kind == errorKind) {
+            response = new MockResponse()
+                    .setResponseCode(errorCode)
+                    .setBody("{\"error\":{\"status\":" + errorCode + ",\"message\":\"Injected error\"}}");
+        } else if (kind == SEARCH) {
+            response = json(searchJson);
+        } else if (kind == TOP_TRACKS) {
+            response = json(topTracksJson);
+        } else if (kind == IMAGE) {
+            response = new MockResponse()
+                    .setHeader("Content-Type", "image/png")
+                    .setHeader("Cache-Control", "max-age=31536000")
+                    .setBody(image);
+        } else {
+            response = previewResponse(request.getHeader("Range"));
+        }
+
+        bytes[kind].addAndGet(response.getBody().size());
+
+        if (bytesPerSecond > 0) {
+            int perPeriod = Math.max(1, (int) (bytesPerSecond * THROTTLE_PERIOD_MS / 1000));
+            response.throttleBody(perPeriod, THROTTLE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        }
+
+        return response;
+    }
+
+    /**
+     * A preview clip, or the part of it a Range header asks for
+     * @param range value of the Range header, or null
+     * @return response
+     */
+    private MockResponse previewResponse(String range) {
+        MockResponse response = new MockResponse()
+                .setHeader("Content-Type", "audio/mpeg")
+                .setHeader("Accept-Ranges", "bytes");
+
+        if (range == null || !range.startsWith("bytes=")) {
+            return response.setBody(preview);
+        }
+
+        String[] bounds = range.substring("bytes=".length()).split("-", -1);
+        int start = Integer.parseInt(bounds[0]);
+        int end = bounds[1].isEmpty() ? preview.length - 1 : Math.min(Integer.parseInt(bounds[1]), preview.length - 1);
+
+        if (start >= preview.length) {
+            return response.setResponseCode(416)
+                    .setHeader("Content-Range", "bytes */" + preview.length);
+        }
+
+        byte[] part = new byte[end - start + 1];
+        System.arraycopy(preview, start, part, 0, part.length);
+
+        return response.setResponseCode(206)
+                .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + preview.length)
+                .setBody(part);
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody(body);
+    }
+
+    private static int kindOf(String path) {
+        if (path.startsWith("/v1/search")) {
+            return SEARCH;
+        } else if (path.startsWith("/v1/artists/") && path.contains("/top-tracks")) {
+            return TOP_TRACKS;
+        } else if (path.startsWith("/image/")) {
+            return IMAGE;
+        } else if (path.startsWith("/preview/")) {
+            return PREVIEW;
+        }
+        return -1;
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = MockSpotifyBackend.class.getResourceAsStream("/mock/" + name);
+        if (in == null) {
+            throw new IOException("Missing test resource mock/" + name);
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.natelaclaire.spotifystreamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suggestion lookup latency against the size of the ArtistIndex. Suggestions are looked up
+ * on the UI thread as the user types, so they have to stay well inside a 16 ms frame at the
+ * index's cap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArtistIndexBenchmark {
+
+    // number of artists in the index; ArtistSuggestions caps it at 2000
+    @Param({ "500", "2000", "50000" })
+    public int indexSize;
+
+    private static final int SUGGESTION_LIMIT = 20;
+
+    // a power of two, so that the next prefix is picked with a mask
+    private static final int PREFIXES = 256;
+
+    private ArtistIndex index;
+    private List<SpotifyArtist> artists;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(indexSize);
+        artists = BenchmarkData.artists(indexSize);
+
+        index = new ArtistIndex(indexSize);
+        for (SpotifyArtist artist : artists) {
+            index.add(artist.id, artist.name, artist.getPhotoUrl());
+        }
+        index.publish();
+
+        // what users type: the first few letters of a name
+        prefixes = new String[PREFIXES];
+        for (int i = 0; i < PREFIXES; i++) {
+            String name = artists.get(random.nextInt(artists.size())).name;
+            prefixes[i] = name.substring(0, Math.min(name.length(), 2 + random.nextInt(3)));
+        }
+
+        System.out.println("Index of " + index.size() + " artists uses " + index.sizeInBytes() + " bytes");
+    }
+
+    @Benchmark
+    public List<ArtistIndex.Match> lookup() {
+        next = (next + 1) & (PREFIXES - 1);
+        return index.lookup(prefixes[next], SUGGESTION_LIMIT);
+    }
+
+    /**
+     * Adding an artist already in the index, as every search result does
+     */
+    @Benchmark
+    public void addSeen() {
+        next = (next + 1) % indexSize;
+        SpotifyArtist artist = artists.get(next);
+        index.add(artist.id, artist.name, artist.getPhotoUrl());
+    }
+}
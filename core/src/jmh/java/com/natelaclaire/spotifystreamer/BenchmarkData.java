@@ -0,0 +1,248 @@
+package com.natelaclaire.spotifystreamer;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthetic data shaped like the Spotify API's responses and the app's lists, generated from
+ * a fixed seed so that every run measures the same thing
+ */
+final class BenchmarkData {
+
+    // the markets listed on every track and album of a real response
+    private static final String[] MARKETS = {
+            "AD", "AR", "AT", "AU", "BE", "BG", "BO", "BR", "CA", "CH", "CL", "CO", "CR", "CY",
+            "CZ", "DE", "DK", "DO", "EC", "EE", "ES", "FI", "FR", "GB", "GR", "GT", "HK", "HN",
+            "HU", "IE", "IS", "IT", "LI", "LT", "LU", "LV", "MC", "MT", "MX", "MY", "NI", "NL",
+            "NO", "NZ", "PA", "PE", "PH", "PL", "PT", "PY", "RO", "SE", "SG", "SI", "SK", "SV",
+            "TR", "TW", "US", "UY"
+    };
+
+    private static final String[] SYLLABLES = {
+            "ba", "be", "bo", "da", "de", "do", "ka", "ke", "la", "le", "li", "ma", "mo", "na",
+            "ne", "ra", "re", "ro", "sa", "so", "ta", "te", "to", "va", "ze"
+    };
+
+    private static final String IMAGE_PREFIX = "https://i.scdn.co/image/";
+    private static final String PREVIEW_PREFIX = "https://p.scdn.co/mp3-preview/";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * A page of a searchArtists response
+     * @param count number of artists
+     * @return response JSON
+     */
+    static String searchResponse(int count) {
+        Random random = new Random(count);
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\"artists\":{\"href\":\"https://api.spotify.com/v1/search?query=a&offset=0&limit=")
+                .append(count).append("&type=artist\",\"items\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendArtist(json, random, i);
+        }
+        json.append("],\"limit\":").append(count)
+                .append(",\"next\":null,\"offset\":0,\"previous\":null,\"total\":").append(count)
+                .append("}}");
+
+        return json.toString();
+    }
+
+    /**
+     * A getArtistTopTrack response
+     * @param count number of tracks, 10 in the real API
+     * @return response JSON
+     */
+    static String topTracksResponse(int count) {
+        Random random = new Random(count);
+        StringBuilder json = new StringBuilder("{\"tracks\":[");
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            String albumId = id(random);
+            json.append("{\"album\":{\"album_type\":\"album\",\"available_markets\":");
+            appendMarkets(json);
+            json.append(",\"external_urls\":{\"spotify\":\"https://open.spotify.com/album/").append(albumId)
+                    .append("\"},\"href\":\"https://api.spotify.com/v1/albums/").append(albumId)
+                    .append("\",\"id\":\"").append(albumId).append("\",\"images\":");
+            appendImages(json, random);
+            json.append(",\"name\":\"").append(name(random, 3))
+                    .append("\",\"type\":\"album\",\"uri\":\"spotify:album:").append(albumId).append("\"},");
+
+            json.append("\"artists\":[");
+            appendSimpleArtist(json, random);
+            json.append("],\"available_markets\":");
+            appendMarkets(json);
+
+            String trackId = id(random);
+            json.append(",\"disc_number\":1,\"duration_ms\":").append(150000 + random.nextInt(150000))
+                    .append(",\"explicit\":false,\"external_ids\":{\"isrc\":\"USRC1").append(random.nextInt(9000000) + 1000000)
+                    .append("\"},\"external_urls\":{\"spotify\":\"https://open.spotify.com/track/").append(trackId)
+                    .append("\"},\"href\":\"https://api.spotify.com/v1/tracks/").append(trackId)
+                    .append("\",\"id\":\"").append(trackId)
+                    .append("\",\"name\":\"").append(name(random, 2))
+                    .append("\",\"popularity\":").append(random.nextInt(100))
+                    .append(",\"preview_url\":\"").append(PREVIEW_PREFIX).append(hex(random, 40))
+                    .append("\",\"track_number\":").append(i + 1)
+                    .append(",\"type\":\"track\",\"uri\":\"spotify:track:").append(trackId).append("\"}");
+        }
+        json.append("]}");
+
+        return json.toString();
+    }
+
+    /**
+     * Artists as the app holds them in its lists
+     * @param count number of artists
+     * @return list of artists
+     */
+    static ArrayList<SpotifyArtist> artists(int count) {
+        Random random = new Random(count);
+        ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>(count);
+
+        for (int i = 0; i < count; i++) {
+            String photo = random.nextInt(10) == 0 ? null : IMAGE_PREFIX + hex(random, 40);
+            artists.add(new SpotifyArtist(id(random), name(random, 1 + random.nextInt(3)), photo));
+        }
+
+        return artists;
+    }
+
+    /**
+     * Tracks as the app holds them in its lists; tracks come from a few albums, so album
+     * names and images repeat
+     * @param count number of tracks
+     * @return list of tracks
+     */
+    static ArrayList<SpotifyTrack> tracks(int count) {
+        Random random = new Random(count);
+        ArrayList<SpotifyTrack> tracks = new ArrayList<SpotifyTrack>(count);
+
+        String albumName = null;
+        String small = null;
+        String large = null;
+
+        for (int i = 0; i < count; i++) {
+            if (i % 4 == 0) {
+                albumName = name(random, 3);
+                small = IMAGE_PREFIX + hex(random, 40);
+                large = IMAGE_PREFIX + hex(random, 40);
+            }
+            tracks.add(new SpotifyTrack(name(random, 2), albumName, small, large,
+                    PREVIEW_PREFIX + hex(random, 40)));
+        }
+
+        return tracks;
+    }
+
+    /**
+     * A word of a few syllables, for artist names and queries
+     * @param random source of randomness
+     * @return capitalized word
+     */
+    static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+
+        return word.toString();
+    }
+
+    static String name(Random random, int words) {
+        StringBuilder name = new StringBuilder(word(random));
+
+        for (int i = 1; i < words; i++) {
+            name.append(' ').append(word(random));
+        }
+        return name.toString();
+    }
+
+    static String id(Random random) {
+        String chars = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        StringBuilder id = new StringBuilder(22);
+
+        for (int i = 0; i < 22; i++) {
+            id.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return id.toString();
+    }
+
+    private static String hex(Random random, int length) {
+        StringBuilder hex = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            hex.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return hex.toString();
+    }
+
+    private static void appendArtist(StringBuilder json, Random random, int position) {
+        String id = id(random);
+
+        json.append("{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/").append(id)
+                .append("\"},\"followers\":{\"href\":null,\"total\":").append(random.nextInt(1000000))
+                .append("},\"genres\":[\"").append(word(random).toLowerCase(Locale.US)).append("\",\"")
+                .append(word(random).toLowerCase(Locale.US))
+                .append("\"],\"href\":\"https://api.spotify.com/v1/artists/").append(id)
+                .append("\",\"id\":\"").append(id).append("\",\"images\":");
+
+        // some artists have no photo
+        if (position % 10 == 9) {
+            json.append("[]");
+        } else {
+            appendImages(json, random);
+        }
+
+        json.append(",\"name\":\"").append(name(random, 1 + random.nextInt(3)))
+                .append("\",\"popularity\":").append(random.nextInt(100))
+                .append(",\"type\":\"artist\",\"uri\":\"spotify:artist:").append(id).append("\"}");
+    }
+
+    private static void appendSimpleArtist(StringBuilder json, Random random) {
+        String id = id(random);
+
+        json.append("{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/").append(id)
+                .append("\"},\"href\":\"https://api.spotify.com/v1/artists/").append(id)
+                .append("\",\"id\":\"").append(id)
+                .append("\",\"name\":\"").append(name(random, 2))
+                .append("\",\"type\":\"artist\",\"uri\":\"spotify:artist:").append(id).append("\"}");
+    }
+
+    private static void appendImages(StringBuilder json, Random random) {
+        json.append('[');
+        int[] sizes = { 640, 300, 64 };
+        for (int i = 0; i < sizes.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"height\":").append(sizes[i])
+                    .append(",\"url\":\"").append(IMAGE_PREFIX).append(hex(random, 40))
+                    .append("\",\"width\":").append(sizes[i]).append('}');
+        }
+        json.append(']');
+    }
+
+    private static void appendMarkets(StringBuilder json) {
+        json.append('[');
+        for (int i = 0; i < MARKETS.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(MARKETS[i]).append('"');
+        }
+        json.append(']');
+    }
+}
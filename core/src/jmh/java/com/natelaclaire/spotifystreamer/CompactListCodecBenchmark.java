@@ -0,0 +1,108 @@
+package com.natelaclaire.spotifystreamer;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode time of the saved instance state lists against list length, for the
+ * CompactListCodec and, as a baseline, the same lists as JSON. Parcel only exists on a device,
+ * so JSON stands in for a format that writes every string of every element. The encoded
+ * sizes are printed when each trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactListCodecBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int listLength;
+
+    private static final Type ARTIST_LIST = new TypeToken<ArrayList<SpotifyArtist>>() {}.getType();
+    private static final Type TRACK_LIST = new TypeToken<ArrayList<SpotifyTrack>>() {}.getType();
+
+    private final Gson gson = new Gson();
+
+    private ArrayList<SpotifyArtist> artists;
+    private ArrayList<SpotifyTrack> tracks;
+
+    private byte[] encodedArtists;
+    private byte[] encodedTracks;
+    private byte[] jsonArtists;
+    private byte[] jsonTracks;
+
+    @Setup
+    public void setUp() throws UnsupportedEncodingException {
+        artists = BenchmarkData.artists(listLength);
+        tracks = BenchmarkData.tracks(listLength);
+
+        encodedArtists = CompactListCodec.encodeArtists(artists);
+        encodedTracks = CompactListCodec.encodeTracks(tracks);
+        jsonArtists = gson.toJson(artists).getBytes("UTF-8");
+        jsonTracks = gson.toJson(tracks).getBytes("UTF-8");
+
+        System.out.println(listLength + " artists: " + encodedArtists.length + " bytes encoded, "
+                + jsonArtists.length + " bytes as JSON; "
+                + listLength + " tracks: " + encodedTracks.length + " bytes encoded, "
+                + jsonTracks.length + " bytes as JSON");
+    }
+
+    @Benchmark
+    public byte[] encodeArtists() {
+        return CompactListCodec.encodeArtists(artists);
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyArtist> decodeArtists() {
+        return CompactListCodec.decodeArtists(encodedArtists);
+    }
+
+    @Benchmark
+    public byte[] encodeTracks() {
+        return CompactListCodec.encodeTracks(tracks);
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyTrack> decodeTracks() {
+        return CompactListCodec.decodeTracks(encodedTracks);
+    }
+
+    @Benchmark
+    public byte[] encodeArtistsJson() throws UnsupportedEncodingException {
+        return gson.toJson(artists).getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyArtist> decodeArtistsJson() throws UnsupportedEncodingException {
+        return gson.fromJson(new String(jsonArtists, "UTF-8"), ARTIST_LIST);
+    }
+
+    @Benchmark
+    public byte[] encodeTracksJson() throws UnsupportedEncodingException {
+        return gson.toJson(tracks).getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyTrack> decodeTracksJson() throws UnsupportedEncodingException {
+        return gson.fromJson(new String(jsonTracks, "UTF-8"), TRACK_LIST);
+    }
+}
@@ -0,0 +1,171 @@
+package com.natelaclaire.spotifystreamer;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.Tracks;
+
+/**
+ * Throughput of turning API responses into the app's lists: parsing with the default Gson
+ * converter against SlimJson, mapping the parsed models with SpotifyMapper, and picking an
+ * image with the ImageSelector. Run with -prof gc to compare the bytes allocated per response.
+ * <p>
+ * The *EagerUris and *LazyUris pairs compare parsing every URL of a mapped list up front, as
+ * the models did before they kept their URLs as Strings, with parsing only the thumbnails of
+ * the rows on screen. java.net.URI stands in for android.net.Uri, which only exists on a
+ * device; it parses the whole URL straight away, so the eager numbers are an upper bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    // a first page of search results, and the 10 top tracks of an artist
+    private static final int SEARCH_PAGE = 20;
+    private static final int TOP_TRACKS = 10;
+
+    // typical list thumbnail and large image sizes in pixels
+    private static final int THUMBNAIL_PX = 192;
+    private static final int LARGE_PX = 1080;
+
+    // rows on screen when a list is first shown; the rest of the URLs may never be needed
+    private static final int VISIBLE_ROWS = 8;
+
+    private final Gson defaultGson = new Gson();
+    private final Gson slimGson = SlimJson.create();
+
+    private String searchJson;
+    private String topTracksJson;
+
+    private ArtistsPager searchResults;
+    private Tracks topTracks;
+    private List<Image> images;
+
+    // where the URI benchmarks leave their URIs, so that they can't be optimized away
+    private ArrayList<URI> uris;
+
+    @Setup
+    public void setUp() {
+        searchJson = BenchmarkData.searchResponse(SEARCH_PAGE);
+        topTracksJson = BenchmarkData.topTracksResponse(TOP_TRACKS);
+
+        searchResults = slimGson.fromJson(searchJson, ArtistsPager.class);
+        topTracks = slimGson.fromJson(topTracksJson, Tracks.class);
+        images = topTracks.tracks.get(0).album.images;
+    }
+
+    @Benchmark
+    public ArtistsPager parseSearchDefault() {
+        return defaultGson.fromJson(searchJson, ArtistsPager.class);
+    }
+
+    @Benchmark
+    public ArtistsPager parseSearchSlim() {
+        return slimGson.fromJson(searchJson, ArtistsPager.class);
+    }
+
+    @Benchmark
+    public Tracks parseTopTracksDefault() {
+        return defaultGson.fromJson(topTracksJson, Tracks.class);
+    }
+
+    @Benchmark
+    public Tracks parseTopTracksSlim() {
+        return slimGson.fromJson(topTracksJson, Tracks.class);
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyArtist> mapArtists() {
+        return SpotifyMapper.toSpotifyArtists(searchResults.artists.items, THUMBNAIL_PX);
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyTrack> mapTracks() {
+        return SpotifyMapper.toSpotifyTracks(topTracks.tracks, THUMBNAIL_PX, LARGE_PX);
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyArtist> mapArtistsEagerUris() {
+        ArrayList<SpotifyArtist> artists = SpotifyMapper.toSpotifyArtists(searchResults.artists.items, THUMBNAIL_PX);
+        uris = new ArrayList<URI>(artists.size());
+
+        for (SpotifyArtist artist : artists) {
+            uris.add(parse(artist.getPhotoUrl()));
+        }
+        return artists;
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyArtist> mapArtistsLazyUris() {
+        ArrayList<SpotifyArtist> artists = SpotifyMapper.toSpotifyArtists(searchResults.artists.items, THUMBNAIL_PX);
+        uris = new ArrayList<URI>(VISIBLE_ROWS);
+
+        for (int i = 0; i < VISIBLE_ROWS && i < artists.size(); i++) {
+            uris.add(parse(artists.get(i).getPhotoUrl()));
+        }
+        return artists;
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyTrack> mapTracksEagerUris() {
+        ArrayList<SpotifyTrack> tracks = SpotifyMapper.toSpotifyTracks(topTracks.tracks, THUMBNAIL_PX, LARGE_PX);
+        uris = new ArrayList<URI>(tracks.size() * 3);
+
+        for (SpotifyTrack track : tracks) {
+            uris.add(parse(track.getAlbumImageSmallUrl()));
+            uris.add(parse(track.getAlbumImageLargeUrl()));
+            uris.add(parse(track.getPreviewUrl()));
+        }
+        return tracks;
+    }
+
+    @Benchmark
+    public ArrayList<SpotifyTrack> mapTracksLazyUris() {
+        ArrayList<SpotifyTrack> tracks = SpotifyMapper.toSpotifyTracks(topTracks.tracks, THUMBNAIL_PX, LARGE_PX);
+        uris = new ArrayList<URI>(VISIBLE_ROWS);
+
+        // the large image and the preview are only needed once a track is played
+        for (int i = 0; i < VISIBLE_ROWS && i < tracks.size(); i++) {
+            uris.add(parse(tracks.get(i).getAlbumImageSmallUrl()));
+        }
+        return tracks;
+    }
+
+    /**
+     * Parsing and mapping together, as a FetchTracksTask does on a background thread
+     */
+    @Benchmark
+    public ArrayList<SpotifyTrack> parseAndMapTopTracks() {
+        Tracks tracks = slimGson.fromJson(topTracksJson, Tracks.class);
+        return SpotifyMapper.toSpotifyTracks(tracks.tracks, THUMBNAIL_PX, LARGE_PX);
+    }
+
+    @Benchmark
+    public String selectImage() {
+        return ImageSelector.select(images, THUMBNAIL_PX);
+    }
+
+    private static URI parse(String url) {
+        return url == null ? null : URI.create(url);
+    }
+}
@@ -0,0 +1,79 @@
+package com.natelaclaire.spotifystreamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of ResultCache hits, misses and puts, which MemoryCache does on the UI thread for
+ * every search and every artist opened
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultCacheBenchmark {
+
+    // the size of the MemoryCache's result caches
+    private static final int CACHE_ENTRIES = 50;
+    private static final int LIST_SIZE = 20;
+
+    private ResultCache<ArrayList<SpotifyArtist>> cache;
+    private String[] keys;
+    private ArrayList<SpotifyArtist> list;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(CACHE_ENTRIES);
+
+        cache = new ResultCache<ArrayList<SpotifyArtist>>(CACHE_ENTRIES, Long.MAX_VALUE, TimeUnit.HOURS.toMillis(1),
+                new ResultCache.Sizer<ArrayList<SpotifyArtist>>() {
+                    @Override
+                    public long sizeOf(ArrayList<SpotifyArtist> value) {
+                        return value.size();
+                    }
+                });
+
+        list = BenchmarkData.artists(LIST_SIZE);
+        keys = new String[CACHE_ENTRIES];
+        for (int i = 0; i < CACHE_ENTRIES; i++) {
+            keys[i] = BenchmarkData.word(random).toLowerCase(Locale.US) + i;
+            cache.put(keys[i], list);
+        }
+    }
+
+    @Benchmark
+    public ResultCache.Entry<ArrayList<SpotifyArtist>> hit() {
+        next = (next + 1) % CACHE_ENTRIES;
+        return cache.get(keys[next]);
+    }
+
+    @Benchmark
+    public ResultCache.Entry<ArrayList<SpotifyArtist>> miss() {
+        return cache.get("not cached");
+    }
+
+    /**
+     * Replaces an existing entry, so the cache stays full without evicting
+     */
+    @Benchmark
+    public void put() {
+        next = (next + 1) % CACHE_ENTRIES;
+        cache.put(keys[next], list);
+    }
+}
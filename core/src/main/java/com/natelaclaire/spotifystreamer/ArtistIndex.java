@@ -0,0 +1,443 @@
+package com.natelaclaire.spotifystreamer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prefix index over every artist the app has seen, used to suggest artists while the user
+ * types without going to the network. Normalized artist names are packed into a single char
+ * array, and a sorted array of postings points at the start of every word in every name, so
+ * "beat" finds both "Beatles" and "The Beatles" with a binary search. Matches are ranked by
+ * how often an artist has turned up in results or been picked.
+ *
+ * The index holds at most maxArtists artists; when it is full, the least popular ones are
+ * dropped.
+ *
+ * Changes are made under the index's lock but only become visible to lookup() once publish()
+ * has rebuilt the postings and swapped in a read-only snapshot. Lookups read that snapshot
+ * without taking the lock, so the UI thread never waits for a load or a rebuild in progress.
+ */
+public class ArtistIndex {
+
+    private static final int FILE_VERSION = 1;
+
+    // how much weight an artist gains when it shows up in results and when it is picked
+    private static final int SEEN_WEIGHT = 1;
+    private static final int SELECTED_WEIGHT = 10;
+
+    /**
+     * An artist found in the index
+     */
+    public static class Match {
+        public final String id;
+        public final String name;
+        public final String photo;
+        final int weight;
+
+        Match(String id, String name, String photo, int weight) {
+            this.id = id;
+            this.name = name;
+            this.photo = photo;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Read-only copy of the index that lookups are answered from
+     */
+    private static class Snapshot {
+        final String[] ids;
+        final String[] names;
+        final String[] photos;
+        final int[] weights;
+        final int[] keyStarts;
+        final char[] keys;
+        final long[] postings;
+
+        Snapshot(String[] ids, String[] names, String[] photos, int[] weights, int[] keyStarts,
+                 char[] keys, long[] postings) {
+            this.ids = ids;
+            this.names = names;
+            this.photos = photos;
+            this.weights = weights;
+            this.keyStarts = keyStarts;
+            this.keys = keys;
+            this.postings = postings;
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(new String[0], new String[0], new String[0],
+            new int[0], new int[0], new char[0], new long[0]);
+
+    private final int maxArtists;
+
+    // per-artist data, indexed by ordinal
+    private final ArrayList<String> ids = new ArrayList<String>();
+    private final ArrayList<String> names = new ArrayList<String>();
+    private final ArrayList<String> photos = new ArrayList<String>();
+    private int[] weights = new int[16];
+    private int[] keyStarts = new int[16];
+    private final HashMap<String, Integer> ordinals = new HashMap<String, Integer>();
+
+    // normalized names of all artists, back to back
+    private char[] keys = new char[256];
+    private int keysLength = 0;
+
+    // each posting is (ordinal << 32 | offset into keys of a word start), sorted by the text
+    // from that offset to the end of the artist's key
+    private long[] postings = new long[0];
+    private boolean dirty = false;
+
+    // what lookup() sees, replaced by publish()
+    private volatile Snapshot snapshot = EMPTY;
+
+    /**
+     * Constructor
+     * @param maxArtists maximum number of artists to keep in the index
+     */
+    public ArtistIndex(int maxArtists) {
+        this.maxArtists = maxArtists;
+    }
+
+    /**
+     * Add an artist to the index, or bump its weight if it is already there
+     * @param id Spotify artist ID
+     * @param name artist name
+     * @param photo photo URL, or null
+     */
+    public synchronized void add(String id, String name, String photo) {
+        addInternal(id, name, photo, SEEN_WEIGHT);
+    }
+
+    /**
+     * Record that the user picked an artist, so that it ranks higher next time
+     * @param id Spotify artist ID
+     */
+    public synchronized void recordSelection(String id) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal != null) {
+            weights[ordinal] += SELECTED_WEIGHT;
+        }
+    }
+
+    /**
+     * Make the changes since the last call visible to lookup(), rebuilding the postings if
+     * artists have been added or dropped. Call it from a background thread after a batch of
+     * changes.
+     */
+    public synchronized void publish() {
+        if (dirty) {
+            rebuild();
+        }
+
+        int count = ids.size();
+        snapshot = new Snapshot(
+                ids.toArray(new String[count]),
+                names.toArray(new String[count]),
+                photos.toArray(new String[count]),
+                Arrays.copyOf(weights, count),
+                Arrays.copyOf(keyStarts, count),
+                Arrays.copyOf(keys, keysLength),
+                postings);
+    }
+
+    /**
+     * Find artists with a word in their name that starts with the query, as of the last
+     * publish(). Never blocks.
+     * @param query text typed so far
+     * @param limit maximum number of matches to return
+     * @return matches, best first
+     */
+    public List<Match> lookup(String query, int limit) {
+        Snapshot s = snapshot;
+        String prefix = normalize(query);
+        if (prefix.length() == 0 || s.ids.length == 0) {
+            return Collections.emptyList();
+        }
+
+        // the postings starting with the prefix form one contiguous run
+        int from = lowerBound(s.keys, s.postings, prefix);
+        ArrayList<Match> matches = new ArrayList<Match>();
+        boolean[] added = new boolean[s.ids.length];
+
+        for (int i = from; i < s.postings.length && comparePrefix(s.keys, (int) s.postings[i], prefix) == 0; i++) {
+            int ordinal = (int) (s.postings[i] >>> 32);
+            if (!added[ordinal]) {
+                added[ordinal] = true;
+
+                // matching the beginning of the whole name is worth more than a later word
+                int weight = s.weights[ordinal];
+                if ((int) s.postings[i] == s.keyStarts[ordinal]) {
+                    weight += SELECTED_WEIGHT;
+                }
+
+                matches.add(new Match(s.ids[ordinal], s.names[ordinal], s.photos[ordinal], weight));
+            }
+        }
+
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                if (a.weight != b.weight) {
+                    return a.weight > b.weight ? -1 : 1;
+                }
+                return a.name.length() - b.name.length();
+            }
+        });
+
+        return matches.size() > limit ? new ArrayList<Match>(matches.subList(0, limit)) : matches;
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * Estimate of the memory used by the index, in bytes
+     * @return approximate size
+     */
+    public synchronized long sizeInBytes() {
+        long size = 2L * keys.length + 8L * postings.length + 8L * weights.length;
+        for (int i = 0; i < ids.size(); i++) {
+            size += 2L * (ids.get(i).length() + names.get(i).length()
+                    + (photos.get(i) == null ? 0 : photos.get(i).length()));
+        }
+        return size;
+    }
+
+    /**
+     * Write the index to a stream
+     * @param out stream to write to
+     * @throws IOException
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FILE_VERSION);
+        out.writeInt(ids.size());
+
+        for (int i = 0; i < ids.size(); i++) {
+            out.writeUTF(ids.get(i));
+            out.writeUTF(names.get(i));
+            out.writeUTF(photos.get(i) == null ? "" : photos.get(i));
+            out.writeInt(weights[i]);
+        }
+    }
+
+    /**
+     * Add the artists from a stream written by writeTo()
+     * @param in stream to read from
+     * @throws IOException
+     */
+    public synchronized void readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FILE_VERSION) {
+            return;
+        }
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            String name = in.readUTF();
+            String photo = in.readUTF();
+            int weight = in.readInt();
+
+            addInternal(id, name, photo.length() == 0 ? null : photo, weight);
+        }
+    }
+
+    private void addInternal(String id, String name, String photo, int weight) {
+        Integer ordinal = ordinals.get(id);
+
+        if (ordinal != null) {
+            weights[ordinal] += weight;
+            if (photo != null) {
+                photos.set(ordinal, photo);
+            }
+            return;
+        }
+
+        if (ids.size() >= maxArtists) {
+            evict();
+        }
+
+        int index = ids.size();
+        String key = normalize(name);
+
+        ids.add(id);
+        names.add(name);
+        photos.add(photo);
+        ordinals.put(id, index);
+
+        if (index == weights.length) {
+            weights = Arrays.copyOf(weights, index * 2);
+            keyStarts = Arrays.copyOf(keyStarts, index * 2);
+        }
+        weights[index] = weight;
+        keyStarts[index] = appendKey(key);
+
+        dirty = true;
+    }
+
+    /**
+     * Drop the least popular quarter of the artists and repack the key storage
+     */
+    private void evict() {
+        Integer[] order = new Integer[ids.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return weights[b] - weights[a];
+            }
+        });
+
+        int keep = maxArtists - maxArtists / 4;
+        ArrayList<String> oldIds = new ArrayList<String>(ids);
+        ArrayList<String> oldNames = new ArrayList<String>(names);
+        ArrayList<String> oldPhotos = new ArrayList<String>(photos);
+        int[] oldWeights = weights;
+
+        ids.clear();
+        names.clear();
+        photos.clear();
+        ordinals.clear();
+        weights = new int[Math.max(16, keep)];
+        keyStarts = new int[weights.length];
+        keysLength = 0;
+
+        for (int i = 0; i < keep && i < order.length; i++) {
+            int old = order[i];
+            addInternal(oldIds.get(old), oldNames.get(old), oldPhotos.get(old), oldWeights[old]);
+        }
+    }
+
+    private int appendKey(String key) {
+        int start = keysLength;
+        int needed = keysLength + key.length() + 1;
+
+        if (needed > keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(needed, keys.length * 2));
+        }
+
+        key.getChars(0, key.length(), keys, keysLength);
+        keysLength += key.length();
+
+        // terminate each key so that comparisons stop at the end of the name
+        keys[keysLength++] = 0;
+
+        return start;
+    }
+
+    /**
+     * Rebuild the sorted postings array after artists have been added. The postings are kept
+     * in a long[] throughout, so a rebuild allocates no boxed values.
+     */
+    private void rebuild() {
+        long[] list = new long[Math.max(16, ids.size() * 2)];
+        int count = 0;
+
+        for (int ordinal = 0; ordinal < ids.size(); ordinal++) {
+            int offset = keyStarts[ordinal];
+            boolean wordStart = true;
+
+            for (int i = offset; keys[i] != 0; i++) {
+                if (wordStart && keys[i] != ' ') {
+                    if (count == list.length) {
+                        list = Arrays.copyOf(list, count * 2);
+                    }
+                    list[count++] = ((long) ordinal << 32) | i;
+                }
+                wordStart = keys[i] == ' ';
+            }
+        }
+
+        long[] sorted = Arrays.copyOf(list, count);
+        mergeSort(sorted, new long[count], 0, count);
+
+        // a new array every time, as the published snapshot still refers to the old one
+        postings = sorted;
+        dirty = false;
+    }
+
+    /**
+     * Sort postings[from, to) by the key text they point at
+     */
+    private void mergeSort(long[] postings, long[] temp, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(postings, temp, from, mid);
+        mergeSort(postings, temp, mid, to);
+
+        // already in order
+        if (compareAt(keys, (int) postings[mid - 1], (int) postings[mid]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(postings, from, temp, from, to - from);
+        int i = from;
+        int j = mid;
+        int k = from;
+
+        while (i < mid && j < to) {
+            postings[k++] = compareAt(keys, (int) temp[i], (int) temp[j]) <= 0 ? temp[i++] : temp[j++];
+        }
+        while (i < mid) {
+            postings[k++] = temp[i++];
+        }
+        while (j < to) {
+            postings[k++] = temp[j++];
+        }
+    }
+
+    private static int compareAt(char[] keys, int a, int b) {
+        while (keys[a] == keys[b] && keys[a] != 0) {
+            a++;
+            b++;
+        }
+        return keys[a] - keys[b];
+    }
+
+    private static int lowerBound(char[] keys, long[] postings, String prefix) {
+        int low = 0;
+        int high = postings.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(keys, (int) postings[mid], prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compare the key text at offset against the prefix, looking only at prefix.length() chars
+     */
+    private static int comparePrefix(char[] keys, int offset, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = keys[offset + i];
+            if (c != prefix.charAt(i)) {
+                return c - prefix.charAt(i);
+            }
+        }
+        return 0;
+    }
+
+    private static String normalize(String s) {
+        return s.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,258 @@
+package com.natelaclaire.spotifystreamer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Encodes lists of SpotifyArtist and SpotifyTrack objects into a single compact byte array,
+ * for saving instance state. putParcelableArrayList() writes the class name and every string
+ * of every element; here each distinct string is written once, in a table, and the elements
+ * refer to it by index. URLs are split into a prefix and a suffix so that the shared image
+ * and preview host paths are only stored once. Large lists should be saved as IDs instead,
+ * see fitsInBundle().
+ * <p>
+ * Layout: version, string count, strings, element count, elements; every index is a varint
+ * holding the string's position plus one, with zero meaning null.
+ */
+public final class CompactListCodec {
+
+    private static final int VERSION = 1;
+
+    // saved state is sent through a Binder transaction that is limited to 1 MB for the whole
+    // process, so each list gets a small share of it
+    public static final int MAX_SAVED_BYTES = 64 * 1024;
+
+    private CompactListCodec() {
+    }
+
+    /**
+     * Whether an encoded list is small enough to put in a Bundle
+     * @param encoded encoded list
+     * @return true if it may be saved as is
+     */
+    public static boolean fitsInBundle(byte[] encoded) {
+        return encoded.length <= MAX_SAVED_BYTES;
+    }
+
+    /**
+     * Encode a list of artists
+     * @param artists artists to encode
+     * @return encoded list
+     */
+    public static byte[] encodeArtists(List<SpotifyArtist> artists) {
+        Encoder encoder = new Encoder(artists.size());
+
+        for (SpotifyArtist artist : artists) {
+            encoder.string(artist.id);
+            encoder.string(artist.name);
+            encoder.url(artist.getPhotoUrl());
+        }
+
+        return encoder.finish();
+    }
+
+    /**
+     * Decode a list encoded by encodeArtists()
+     * @param encoded encoded list
+     * @return decoded artists
+     * @throws IllegalArgumentException if the data can't be decoded
+     */
+    public static ArrayList<SpotifyArtist> decodeArtists(byte[] encoded) {
+        Decoder decoder = new Decoder(encoded);
+        ArrayList<SpotifyArtist> artists = new ArrayList<SpotifyArtist>(decoder.count);
+
+        for (int i = 0; i < decoder.count; i++) {
+            String id = decoder.string();
+            String name = decoder.string();
+            String photo = decoder.url();
+
+            if (photo == null) {
+                artists.add(new SpotifyArtist(id, name));
+            } else {
+                artists.add(new SpotifyArtist(id, name, photo));
+            }
+        }
+
+        return artists;
+    }
+
+    /**
+     * Encode a list of tracks
+     * @param tracks tracks to encode
+     * @return encoded list
+     */
+    public static byte[] encodeTracks(List<SpotifyTrack> tracks) {
+        Encoder encoder = new Encoder(tracks.size());
+
+        for (SpotifyTrack track : tracks) {
+            encoder.string(track.name);
+            encoder.string(track.albumName);
+            encoder.url(track.getAlbumImageSmallUrl());
+            encoder.url(track.getAlbumImageLargeUrl());
+            encoder.url(track.getPreviewUrl());
+        }
+
+        return encoder.finish();
+    }
+
+    /**
+     * Decode a list encoded by encodeTracks()
+     * @param encoded encoded list
+     * @return decoded tracks
+     * @throws IllegalArgumentException if the data can't be decoded
+     */
+    public static ArrayList<SpotifyTrack> decodeTracks(byte[] encoded) {
+        Decoder decoder = new Decoder(encoded);
+        ArrayList<SpotifyTrack> tracks = new ArrayList<SpotifyTrack>(decoder.count);
+
+        for (int i = 0; i < decoder.count; i++) {
+            String name = decoder.string();
+            String albumName = decoder.string();
+            String albumImageSmall = decoder.url();
+            String albumImageLarge = decoder.url();
+            String preview = decoder.url();
+
+            tracks.add(new SpotifyTrack(name, albumName, albumImageSmall, albumImageLarge, preview));
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Collects the string table while writing element fields as indexes into it
+     */
+    private static class Encoder {
+        private final HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+        private final ArrayList<String> strings = new ArrayList<String>();
+        private final ByteArrayOutputStream elements = new ByteArrayOutputStream();
+        private final int count;
+
+        Encoder(int count) {
+            this.count = count;
+        }
+
+        void string(String value) {
+            if (value == null) {
+                writeVarint(elements, 0);
+                return;
+            }
+
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = strings.size();
+                indexes.put(value, index);
+                strings.add(value);
+            }
+            writeVarint(elements, index + 1);
+        }
+
+        void url(String value) {
+            if (value == null) {
+                writeVarint(elements, 0);
+                return;
+            }
+
+            // split after the last slash, e.g. "https://i.scdn.co/image/" and the image ID
+            int split = value.lastIndexOf('/') + 1;
+            string(value.substring(0, split));
+            string(value.substring(split));
+        }
+
+        byte[] finish() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(elements.size() + strings.size() * 24 + 8);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            try {
+                writeVarint(bytes, VERSION);
+                writeVarint(bytes, strings.size());
+                for (String s : strings) {
+                    out.writeUTF(s);
+                }
+                writeVarint(bytes, count);
+                elements.writeTo(bytes);
+            } catch (IOException e) {
+                // a ByteArrayOutputStream doesn't throw
+                throw new IllegalStateException(e);
+            }
+
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Reads the string table, then element fields one at a time
+     */
+    private static class Decoder {
+        private final ByteArrayInputStream bytes;
+        private final String[] strings;
+        final int count;
+
+        Decoder(byte[] encoded) {
+            bytes = new ByteArrayInputStream(encoded);
+            DataInputStream in = new DataInputStream(bytes);
+
+            try {
+                int version = readVarint(bytes);
+                if (version != VERSION) {
+                    throw new IllegalArgumentException("Unknown version " + version);
+                }
+
+                strings = new String[readVarint(bytes)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = in.readUTF();
+                }
+
+                count = readVarint(bytes);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Truncated list", e);
+            }
+        }
+
+        String string() {
+            int index = readVarint(bytes);
+            if (index == 0) {
+                return null;
+            }
+            if (index > strings.length) {
+                throw new IllegalArgumentException("Bad string index " + index);
+            }
+            return strings[index - 1];
+        }
+
+        String url() {
+            String prefix = string();
+            return prefix == null ? null : prefix + string();
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteArrayInputStream in) {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IllegalArgumentException("Truncated list");
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Bad varint");
+    }
+}
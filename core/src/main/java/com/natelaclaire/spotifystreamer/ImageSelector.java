@@ -0,0 +1,91 @@
+package com.natelaclaire.spotifystreamer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kaaes.spotify.webapi.android.models.Image;
+
+/**
+ * Picks which of the sizes the Spotify API offers for an image to download: the smallest one
+ * that still covers the target size in pixels, so that a 64dp thumbnail isn't filled from a
+ * 640px image. Callers work out the target from the view's size and the display density.
+ * <p>
+ * Spotify lists images largest first, but widths are checked rather than relying on the order.
+ * An image without dimensions is only picked if no image has them.
+ * <p>
+ * For the session, counts how many decoded bytes the selection has saved compared with always
+ * taking the largest image, as a bitmap at 4 bytes per pixel.
+ */
+public final class ImageSelector {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static final AtomicLong selections = new AtomicLong();
+    private static final AtomicLong bytesSaved = new AtomicLong();
+
+    private ImageSelector() {
+    }
+
+    /**
+     * Select the smallest image whose shorter side is at least the target size, or the largest
+     * image if none is big enough
+     * @param images images offered by the API
+     * @param targetPx size of the view in pixels
+     * @return URL of the selected image, or null if there are no images
+     */
+    public static String select(List<Image> images, int targetPx) {
+        if (images == null || images.isEmpty()) {
+            return null;
+        }
+
+        Image best = null;
+        Image largest = null;
+
+        for (Image image : images) {
+            if (image.width == null || image.height == null) {
+                continue;
+            }
+
+            int side = Math.min(image.width, image.height);
+
+            if (largest == null || side > Math.min(largest.width, largest.height)) {
+                largest = image;
+            }
+            if (side >= targetPx && (best == null || side < Math.min(best.width, best.height))) {
+                best = image;
+            }
+        }
+
+        // no dimensions at all: the first image is the largest
+        if (largest == null) {
+            selections.incrementAndGet();
+            return images.get(0).url;
+        }
+
+        if (best == null) {
+            best = largest;
+        }
+
+        selections.incrementAndGet();
+        bytesSaved.addAndGet((long) BYTES_PER_PIXEL
+                * (largest.width * largest.height - best.width * best.height));
+
+        return best.url;
+    }
+
+    /**
+     * Number of images selected this session
+     * @return selection count
+     */
+    public static long getSelectionCount() {
+        return selections.get();
+    }
+
+    /**
+     * Decoded bitmap bytes saved this session by not taking the largest image
+     * @return bytes saved
+     */
+    public static long getBytesSaved() {
+        return bytesSaved.get();
+    }
+}
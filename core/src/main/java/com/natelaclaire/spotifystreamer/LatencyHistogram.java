@@ -0,0 +1,112 @@
+package com.natelaclaire.spotifystreamer;
+
+/**
+ * Fixed-bucket histogram of latencies in milliseconds. The bucket bounds grow roughly
+ * exponentially, so a percentile is known to within a bucket whether it lands at 10ms or at
+ * 10s, and recording a value costs a short scan with no allocation. Percentiles are
+ * interpolated within their bucket; values above the last bound count towards the maximum.
+ */
+public class LatencyHistogram {
+
+    // upper bounds of the buckets, inclusive; the last bucket holds everything slower
+    private static final long[] BOUNDS = {
+            5, 10, 20, 35, 50, 75, 100, 150, 200, 300, 500, 750,
+            1000, 1500, 2000, 3000, 5000, 10000, 20000
+    };
+
+    private final long[] counts = new long[BOUNDS.length + 1];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    /**
+     * Record one latency
+     * @param millis latency in milliseconds; negative values count as 0
+     */
+    public synchronized void record(long millis) {
+        if (millis < 0) {
+            millis = 0;
+        }
+
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+
+        counts[bucket]++;
+        count++;
+        sum += millis;
+        max = Math.max(max, millis);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Mean of the recorded latencies
+     * @return mean in milliseconds, or 0 if nothing has been recorded
+     */
+    public synchronized long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Estimate a percentile, interpolating linearly within the bucket it falls in
+     * @param percentile percentile between 0 and 100, e.g. 95
+     * @return latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        // rank of the wanted value, 1-based
+        double rank = Math.max(1, Math.ceil(percentile / 100 * count));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] == 0 || seen + counts[bucket] < rank) {
+                seen += counts[bucket];
+                continue;
+            }
+
+            long lower = bucket == 0 ? 0 : BOUNDS[bucket - 1];
+            long upper = bucket < BOUNDS.length ? Math.min(BOUNDS[bucket], max) : max;
+            double fraction = (rank - seen) / counts[bucket];
+
+            return lower + Math.round((upper - lower) * fraction);
+        }
+
+        return max;
+    }
+
+    /**
+     * Upper bounds of the buckets, for export; the last bucket has no bound
+     * @return copy of the bounds in milliseconds
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Counts per bucket, for export
+     * @return copy of the counts, one more than there are bounds
+     */
+    public synchronized long[] getCounts() {
+        return counts.clone();
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+}
@@ -0,0 +1,162 @@
+package com.natelaclaire.spotifystreamer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of mapped results, bounded both by number of entries and by an
+ * estimate of the memory the entries hold. Entries older than the freshness window are still
+ * returned, but are marked stale so that the caller can show them while refreshing.
+ *
+ * @param <V> type of the cached values
+ */
+public class ResultCache<V> {
+
+    /**
+     * Estimates how many bytes a cached value holds on to
+     * @param <V> type of the cached values
+     */
+    public interface Sizer<V> {
+        long sizeOf(V value);
+    }
+
+    /**
+     * A cached value along with the time it was stored
+     * @param <V> type of the cached value
+     */
+    public static class Entry<V> {
+        public final V value;
+        public final long storedAt;
+        final long size;
+        private final long freshUntil;
+
+        Entry(V value, long storedAt, long size, long freshMillis) {
+            this.value = value;
+            this.storedAt = storedAt;
+            this.size = size;
+            this.freshUntil = storedAt + freshMillis;
+        }
+
+        /**
+         * Whether the value is older than the cache's freshness window
+         * @return true if the value should be refreshed
+         */
+        public boolean isStale() {
+            return System.currentTimeMillis() > freshUntil;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry<V>> map;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long freshMillis;
+    private final Sizer<V> sizer;
+
+    private long bytes;
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * Constructor
+     * @param maxEntries maximum number of entries to hold
+     * @param maxBytes maximum estimated size of all entries, in bytes
+     * @param freshMillis how long an entry is considered fresh, in milliseconds
+     * @param sizer estimates the size of each value
+     */
+    public ResultCache(int maxEntries, long maxBytes, long freshMillis, Sizer<V> sizer) {
+        this.map = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.freshMillis = freshMillis;
+        this.sizer = sizer;
+    }
+
+    /**
+     * Look up a value, marking it as most recently used
+     * @param key cache key
+     * @return the cached Entry, or null if there is none
+     */
+    public synchronized Entry<V> get(String key) {
+        Entry<V> entry = map.get(key);
+
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Store a value, evicting least recently used entries as needed
+     * @param key cache key
+     * @param value value to store
+     */
+    public synchronized void put(String key, V value) {
+        Entry<V> entry = new Entry<V>(value, System.currentTimeMillis(), sizer.sizeOf(value), freshMillis);
+
+        Entry<V> previous = map.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.size;
+        }
+        bytes += entry.size;
+
+        trimTo(maxEntries, maxBytes);
+    }
+
+    /**
+     * Remove a single entry
+     * @param key cache key
+     */
+    public synchronized void remove(String key) {
+        Entry<V> previous = map.remove(key);
+        if (previous != null) {
+            bytes -= previous.size;
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the cache holds no more than the given fraction
+     * of its byte limit; used to give memory back when the system asks for it
+     * @param fraction fraction of maxBytes to keep, between 0 and 1
+     */
+    public synchronized void trimToFraction(float fraction) {
+        trimTo(maxEntries, (long) (maxBytes * fraction));
+    }
+
+    /**
+     * Remove all entries
+     */
+    public synchronized void evictAll() {
+        map.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    private void trimTo(int entries, long byteLimit) {
+        // the map is in access order, so iteration starts at the least recently used entry
+        Iterator<Map.Entry<String, Entry<V>>> it = map.entrySet().iterator();
+
+        while (it.hasNext() && (map.size() > entries || bytes > byteLimit)) {
+            bytes -= it.next().getValue().size;
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.natelaclaire.spotifystreamer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.Track;
+
+/**
+ * Gson set up to read API responses into only the fields the app maps from. Artists, tracks,
+ * albums and images are read with streaming TypeAdapters that fill in the handful of fields
+ * used by FetchArtistsTask and FetchTracksTask and skip the rest of each object with
+ * skipValue(), so that available_markets (a list of about 60 country codes on every track and
+ * album), external_urls, genres and the like are never turned into objects. The wrappers
+ * around them (ArtistsPager, Pager, Tracks, Artists) are small and still read by reflection.
+ * <p>
+ * Only reading is supported; the app never sends these models to the API.
+ */
+public final class SlimJson {
+
+    private static final ImageTypeAdapter IMAGE_ADAPTER = new ImageTypeAdapter();
+
+    private SlimJson() {
+    }
+
+    /**
+     * Create a Gson instance that reads the Spotify models slimly
+     * @return configured Gson
+     */
+    public static Gson create() {
+        return new GsonBuilder()
+                .registerTypeAdapter(Artist.class, new ArtistTypeAdapter().nullSafe())
+                .registerTypeAdapter(Track.class, new TrackTypeAdapter().nullSafe())
+                .registerTypeAdapter(AlbumSimple.class, new AlbumTypeAdapter().nullSafe())
+                .registerTypeAdapter(Image.class, new ImageTypeAdapter().nullSafe())
+                .create();
+    }
+
+    /**
+     * Reads id, name and images
+     */
+    static class ArtistTypeAdapter extends ReadOnlyTypeAdapter<Artist> {
+        @Override
+        public Artist read(JsonReader in) throws IOException {
+            Artist artist = new Artist();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if (name.equals("id")) {
+                    artist.id = nextString(in);
+                } else if (name.equals("name")) {
+                    artist.name = nextString(in);
+                } else if (name.equals("images")) {
+                    artist.images = readImages(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return artist;
+        }
+    }
+
+    /**
+     * Reads name, preview_url and album
+     */
+    static class TrackTypeAdapter extends ReadOnlyTypeAdapter<Track> {
+        private final AlbumTypeAdapter albumAdapter = new AlbumTypeAdapter();
+
+        @Override
+        public Track read(JsonReader in) throws IOException {
+            Track track = new Track();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if (name.equals("name")) {
+                    track.name = nextString(in);
+                } else if (name.equals("preview_url")) {
+                    track.preview_url = nextString(in);
+                } else if (name.equals("album") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    track.album = albumAdapter.read(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return track;
+        }
+    }
+
+    /**
+     * Reads name and images
+     */
+    static class AlbumTypeAdapter extends ReadOnlyTypeAdapter<AlbumSimple> {
+        @Override
+        public AlbumSimple read(JsonReader in) throws IOException {
+            AlbumSimple album = new AlbumSimple();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if (name.equals("name")) {
+                    album.name = nextString(in);
+                } else if (name.equals("images")) {
+                    album.images = readImages(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return album;
+        }
+    }
+
+    /**
+     * Reads all of an image: url, width and height
+     */
+    static class ImageTypeAdapter extends ReadOnlyTypeAdapter<Image> {
+        @Override
+        public Image read(JsonReader in) throws IOException {
+            Image image = new Image();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if (name.equals("url")) {
+                    image.url = nextString(in);
+                } else if (name.equals("width")) {
+                    image.width = nextInteger(in);
+                } else if (name.equals("height")) {
+                    image.height = nextInteger(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return image;
+        }
+    }
+
+    /**
+     * Base class for the adapters, which are never used to write JSON
+     * @param <T> type read
+     */
+    abstract static class ReadOnlyTypeAdapter<T> extends TypeAdapter<T> {
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            throw new UnsupportedOperationException("Spotify models are only read");
+        }
+    }
+
+    private static List<Image> readImages(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        ArrayList<Image> images = new ArrayList<Image>(3);
+
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else {
+                images.add(IMAGE_ADAPTER.read(in));
+            }
+        }
+        in.endArray();
+
+        return images;
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static Integer nextInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+}
@@ -0,0 +1,53 @@
+package com.natelaclaire.spotifystreamer;
+
+/**
+ * Class to store information about individual artists. The photo URL is kept as a String;
+ * the app parses it only where it needs a Uri. The app passes artists between Activities as
+ * ParcelableArtist.
+ */
+public class SpotifyArtist {
+
+    public String id;
+    public String name;
+
+    private String photoUrl = null;
+
+    /**
+     * Constructor accepting String representations of all fields
+     * @param id Spotify artist ID
+     * @param name Artist name
+     * @param photo URL of artist photo, or null
+     */
+    public SpotifyArtist(String id, String name, String photo) {
+        this.id = id;
+        this.name = name;
+        this.photoUrl = photo;
+    }
+
+    /**
+     * Constructor for artists with no photo
+     * @param id Spotify artist ID
+     * @param name artist name
+     */
+    public SpotifyArtist(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Getter for the photo URL
+     * @return URL of artist photo, or null if there is none
+     */
+    public String getPhotoUrl() {
+        return photoUrl;
+    }
+
+    /**
+     * Returns String representation of object
+     * @return String representation of object
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
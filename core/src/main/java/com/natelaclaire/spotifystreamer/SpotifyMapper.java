@@ -0,0 +1,73 @@
+package com.natelaclaire.spotifystreamer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.Track;
+
+/**
+ * Maps the models returned by the Spotify API to the SpotifyArtist and SpotifyTrack objects
+ * shown in the lists, picking the image sizes through the ImageSelector. Image sizes are given
+ * in pixels; the app works them out from the display.
+ */
+public final class SpotifyMapper {
+
+    private SpotifyMapper() {
+    }
+
+    /**
+     * Map artists from the API to the SpotifyArtist objects shown in the list
+     * @param artists Artists from the API
+     * @param photoPx size of the list thumbnail in pixels, used to pick the photo
+     * @return ArrayList of SpotifyArtist objects
+     */
+    public static ArrayList<SpotifyArtist> toSpotifyArtists(List<Artist> artists, int photoPx) {
+        ArrayList<SpotifyArtist> spotifyArtists = new ArrayList<SpotifyArtist>(artists.size());
+
+        for (Artist a : artists) {
+            // pick the smallest photo that fills the list thumbnail; null if there are none
+            spotifyArtists.add(new SpotifyArtist(
+                    a.id,
+                    a.name,
+                    ImageSelector.select(a.images, photoPx)
+            ));
+        }
+
+        return spotifyArtists;
+    }
+
+    /**
+     * Map tracks from the API to the SpotifyTrack objects shown in the list
+     * @param tracks Tracks from the API
+     * @param thumbnailPx size of the list thumbnail in pixels
+     * @param largePx size the large album image is shown at, in pixels
+     * @return ArrayList of SpotifyTrack objects
+     */
+    public static ArrayList<SpotifyTrack> toSpotifyTracks(List<Track> tracks, int thumbnailPx, int largePx) {
+        ArrayList<SpotifyTrack> spotifyTracks = new ArrayList<SpotifyTrack>(tracks.size());
+
+        for (Track t : tracks) {
+            String albumName = null;
+            String albumImageSmall = null;
+            String albumImageLarge = null;
+
+            // if the album has images, pick the smallest ones that are big enough
+            if (t.album != null) {
+                albumName = t.album.name;
+                albumImageSmall = ImageSelector.select(t.album.images, thumbnailPx);
+                albumImageLarge = ImageSelector.select(t.album.images, largePx);
+            }
+
+            spotifyTracks.add(new SpotifyTrack(
+                    t.name,
+                    albumName,
+                    albumImageSmall,
+                    albumImageLarge,
+                    t.preview_url
+            ));
+        }
+
+        return spotifyTracks;
+    }
+}
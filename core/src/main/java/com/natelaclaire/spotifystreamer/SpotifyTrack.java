@@ -0,0 +1,52 @@
+package com.natelaclaire.spotifystreamer;
+
+/**
+ * Class to store information about individual tracks. URLs are kept as Strings; the app
+ * parses them only where it needs a Uri, since most tracks are shown without ever needing one.
+ */
+public class SpotifyTrack {
+
+    public String name;
+    public String albumName;
+
+    private String albumImageSmallUrl = null;
+    private String albumImageLargeUrl = null;
+    private String previewUrl = null;
+
+    /**
+     * Constructor that accepts all fields as String parameters
+     * @param name track name
+     * @param albumName album name
+     * @param albumImageSmall small image URL, or null
+     * @param albumImageLarge large image URL, or null
+     * @param preview preview URL, or null
+     */
+    public SpotifyTrack(String name, String albumName, String albumImageSmall, String albumImageLarge, String preview) {
+        this.name = name;
+        this.albumName = albumName;
+        this.albumImageSmallUrl = albumImageSmall;
+        this.albumImageLargeUrl = albumImageLarge;
+        this.previewUrl = preview;
+    }
+
+    public String getAlbumImageSmallUrl() {
+        return albumImageSmallUrl;
+    }
+
+    public String getAlbumImageLargeUrl() {
+        return albumImageLargeUrl;
+    }
+
+    public String getPreviewUrl() {
+        return previewUrl;
+    }
+
+    /**
+     * Returns String representation of object
+     * @return String representation of object
+     */
+    @Override
+    public String toString() {
+        return name + ", album " + albumName;
+    }
+}
@@ -0,0 +1,141 @@
+#!/bin/sh
+#
+# Frame-time benchmark for flinging the artist list, run against a device or emulator with
+# the debug build installed.
+#
+# Each run starts MainActivity in a fresh process, searches for a query that returns many
+# artists and flings down until at least 50 of them have been paged in, so that the measured
+# flings bind recycled rows rather than waiting on the network. The frame statistics are then
+# reset, the list is flung down and back up a number of times, and the totals "dumpsys
+# gfxinfo" keeps for the app are read back. Reported, as medians over the runs:
+#   frames  frames rendered during the flings
+#   janky   frames that missed their deadline, and their share of the total
+#   p50/p90/p95/p99  frame time percentiles
+#
+# The summary lines are printed by Android 6.0 (API 23) and later; older releases only have
+# the per-frame profile data, which this script doesn't read.
+#
+# To compare row binding before and after the ViewHolder change, install a build of the
+# commit before "[user-017] Bind list rows through ViewHolders", run the script, then install
+# the current build and run it again with the same options.
+#
+# The search types into the search box, which has focus when MainActivity starts, and needs
+# the network, so the device should be unlocked and online.
+#
+# usage: scripts/frame-benchmark.sh [-n runs] [-f flings] [-q query]
+
+PACKAGE=com.natelaclaire.spotifystreamer
+ACTIVITY=$PACKAGE/.MainActivity
+
+RUNS=5
+FLINGS=10
+QUERY=the
+
+while [ $# -gt 0 ]; do
+    case "$1" in
+        -n) RUNS="$2"; shift ;;
+        -f) FLINGS="$2"; shift ;;
+        -q) QUERY="$2"; shift ;;
+        *) echo "usage: $0 [-n runs] [-f flings] [-q query]" >&2; exit 1 ;;
+    esac
+    shift
+done
+
+ADB=${ADB:-adb}
+
+# screen size, for placing the swipes in the middle of the list
+SIZE=$($ADB shell wm size | tr -d '\r' | sed -n 's/.*: \([0-9]*x[0-9]*\).*/\1/p' | tail -n 1)
+WIDTH=${SIZE%x*}
+HEIGHT=${SIZE#*x}
+X=$((WIDTH / 2))
+TOP=$((HEIGHT * 3 / 10))
+BOTTOM=$((HEIGHT * 8 / 10))
+
+# a short swipe, which the list turns into a fling
+fling_down() {
+    $ADB shell input swipe "$X" "$BOTTOM" "$X" "$TOP" 50
+    sleep 1
+}
+
+fling_up() {
+    $ADB shell input swipe "$X" "$TOP" "$X" "$BOTTOM" 50
+    sleep 1
+}
+
+# print the value of a gfxinfo summary line, e.g. "Janky frames" or "90th percentile"
+gfx_value() {
+    sed -n "s/^ *$1: *\([0-9.]*\).*/\1/p" "$GFX" | head -n 1
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END {
+        if (NR == 0) { print "-"; exit }
+        if (NR % 2) { print v[(NR + 1) / 2] } else { print (v[NR / 2] + v[NR / 2 + 1]) / 2 }
+    }'
+}
+
+GFX=$(mktemp)
+FRAMES=$(mktemp)
+JANKY=$(mktemp)
+JANKY_PERCENT=$(mktemp)
+P50=$(mktemp)
+P90=$(mktemp)
+P95=$(mktemp)
+P99=$(mktemp)
+trap 'rm -f "$GFX" "$FRAMES" "$JANKY" "$JANKY_PERCENT" "$P50" "$P90" "$P95" "$P99"' EXIT
+
+echo "Runs: $RUNS, flings per run: $FLINGS, query: $QUERY"
+
+i=1
+while [ $i -le "$RUNS" ]; do
+    $ADB shell am force-stop "$PACKAGE"
+    $ADB shell am start -W -n "$ACTIVITY" > /dev/null
+
+    $ADB shell input text "$QUERY"
+    $ADB shell input keyevent KEYCODE_ENTER
+    sleep 3
+
+    # close the keyboard, then page in the first 50+ artists and go back to the top
+    $ADB shell input keyevent KEYCODE_BACK
+    for page in 1 2 3 4 5 6; do
+        fling_down
+    done
+    for page in 1 2 3 4 5 6; do
+        fling_up
+    done
+
+    $ADB shell dumpsys gfxinfo "$PACKAGE" reset > /dev/null
+
+    f=1
+    while [ $f -le "$FLINGS" ]; do
+        fling_down
+        f=$((f + 1))
+    done
+    f=1
+    while [ $f -le "$FLINGS" ]; do
+        fling_up
+        f=$((f + 1))
+    done
+
+    $ADB shell dumpsys gfxinfo "$PACKAGE" | tr -d '\r' > "$GFX"
+    gfx_value "Total frames rendered" >> "$FRAMES"
+    gfx_value "Janky frames" >> "$JANKY"
+    sed -n 's/^ *Janky frames: [0-9]* (\([0-9.]*\)%).*/\1/p' "$GFX" | head -n 1 >> "$JANKY_PERCENT"
+    gfx_value "50th percentile" >> "$P50"
+    gfx_value "90th percentile" >> "$P90"
+    gfx_value "95th percentile" >> "$P95"
+    gfx_value "99th percentile" >> "$P99"
+
+    echo "run $i: $(tail -n 1 "$FRAMES") frames, $(tail -n 1 "$JANKY") janky" \
+        "($(tail -n 1 "$JANKY_PERCENT")%), p90 $(tail -n 1 "$P90") ms, p99 $(tail -n 1 "$P99") ms"
+    i=$((i + 1))
+done
+
+echo
+echo "Medians over $RUNS runs"
+echo "  frames rendered:  $(median < "$FRAMES")"
+echo "  janky frames:     $(median < "$JANKY") ($(median < "$JANKY_PERCENT")%)"
+echo "  50th percentile:  $(median < "$P50") ms"
+echo "  90th percentile:  $(median < "$P90") ms"
+echo "  95th percentile:  $(median < "$P95") ms"
+echo "  99th percentile:  $(median < "$P99") ms"
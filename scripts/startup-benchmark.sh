@@ -0,0 +1,114 @@
+#!/bin/sh
+#
+# Start-up benchmark, run against a device or emulator with the debug build installed.
+#
+# Measures, as medians over a number of runs:
+#   cold   process start to the first frame of MainActivity, after a force-stop
+#   warm   MainActivity started again after Back, with the process still alive
+#   search the first search of a freshly started process, from tapping Search to the rows
+#          being shown; this is the phase the warm-up after the first frame targets
+#
+# The phases are read from the lines SpotifyStreamerApplication logs under the "Startup" tag,
+# alongside the TotalTime reported by "am start -W". Pass --no-warmup to start the app with
+# the warm-up turned off, which gives the "before" numbers to compare against on the same
+# build. Builds from before the start-up work log no phases, so against those only the am
+# TotalTimes are reported.
+#
+# The first search types into the search box, which has focus when MainActivity starts, and
+# needs the network, so the device should be unlocked and online.
+#
+# usage: scripts/startup-benchmark.sh [-n runs] [-q query] [--no-warmup]
+
+PACKAGE=com.natelaclaire.spotifystreamer
+ACTIVITY=$PACKAGE/.MainActivity
+
+RUNS=10
+QUERY=coldplay
+WARMUP=true
+
+while [ $# -gt 0 ]; do
+    case "$1" in
+        -n) RUNS="$2"; shift ;;
+        -q) QUERY="$2"; shift ;;
+        --no-warmup) WARMUP=false ;;
+        *) echo "usage: $0 [-n runs] [-q query] [--no-warmup]" >&2; exit 1 ;;
+    esac
+    shift
+done
+
+ADB=${ADB:-adb}
+
+# start MainActivity and wait for it; prints am's TotalTime in milliseconds
+start_activity() {
+    $ADB shell am start -W -n "$ACTIVITY" --ez warmup "$WARMUP" \
+        | tr -d '\r' | sed -n 's/^TotalTime: //p'
+}
+
+# wait for a phase to be logged; prints its time in milliseconds
+wait_for_phase() {
+    phase="$1"
+    tries=0
+    while [ $tries -lt 100 ]; do
+        value=$($ADB logcat -d -s Startup:I | tr -d '\r' \
+            | sed -n "s/.*$phase: \([0-9]*\) ms.*/\1/p" | tail -n 1)
+        if [ -n "$value" ]; then
+            echo "$value"
+            return 0
+        fi
+        sleep 0.2
+        tries=$((tries + 1))
+    done
+    echo "-"
+    return 1
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END {
+        if (NR == 0) { print "-"; exit }
+        if (NR % 2) { print v[(NR + 1) / 2] } else { print int((v[NR / 2] + v[NR / 2 + 1]) / 2) }
+    }'
+}
+
+COLD=$(mktemp)
+COLD_TOTAL=$(mktemp)
+WARM=$(mktemp)
+WARM_TOTAL=$(mktemp)
+INTERACTIVE=$(mktemp)
+SEARCH=$(mktemp)
+trap 'rm -f "$COLD" "$COLD_TOTAL" "$WARM" "$WARM_TOTAL" "$INTERACTIVE" "$SEARCH"' EXIT
+
+echo "Runs: $RUNS, warm-up: $WARMUP"
+
+i=1
+while [ $i -le "$RUNS" ]; do
+    # cold start, then the first search of the process
+    $ADB shell am force-stop "$PACKAGE"
+    $ADB logcat -c
+    start_activity >> "$COLD_TOTAL"
+    wait_for_phase "cold start to first frame" >> "$COLD"
+    wait_for_phase "first frame to interactive" >> "$INTERACTIVE"
+
+    $ADB shell input text "$QUERY"
+    $ADB shell input keyevent KEYCODE_ENTER
+    wait_for_phase "first search to rows" >> "$SEARCH"
+
+    # warm start: Back finishes MainActivity but leaves the process running; the first
+    # Back only closes the keyboard
+    $ADB shell input keyevent KEYCODE_BACK
+    $ADB shell input keyevent KEYCODE_BACK
+    sleep 1
+    $ADB logcat -c
+    start_activity >> "$WARM_TOTAL"
+    wait_for_phase "warm start to first frame" >> "$WARM"
+
+    echo "run $i: cold $(tail -n 1 "$COLD") ms, interactive +$(tail -n 1 "$INTERACTIVE") ms," \
+        "first search $(tail -n 1 "$SEARCH") ms, warm $(tail -n 1 "$WARM") ms"
+    i=$((i + 1))
+done
+
+echo
+echo "Medians over $RUNS runs (warm-up: $WARMUP)"
+echo "  cold start to first frame:   $(grep -v '^-' "$COLD" | median) ms (am TotalTime $(median < "$COLD_TOTAL") ms)"
+echo "  first frame to interactive:  $(grep -v '^-' "$INTERACTIVE" | median) ms"
+echo "  warm start to first frame:   $(grep -v '^-' "$WARM" | median) ms (am TotalTime $(median < "$WARM_TOTAL") ms)"
+echo "  first search to rows:        $(grep -v '^-' "$SEARCH" | median) ms"